@@ -25,12 +25,15 @@ public class MessageConstant {
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
     public static final String ORDER_PAYMENT_TIMEOUT = "订单超时未支付，系统自动取消";
+    public static final String ORDER_NUMBER_UNAVAILABLE = "系统繁忙，请稍后再下单";
 
     public static final String DELETE_NOT_CHOOSE = "请选择要删除的条目";
     public static final String SHOP_ADDRESS_DECODE_FAILED = "店铺地址解析失败";
     public static final String USER_ADDRESS_DECODE_FAILED = "收货地址解析失败";
     public static final String DELIVERY_ROUTE_PLAN_FAILED = "配送路线规划失败";
     public static final String OUT_OF_DELIVERY_RANGE = "超出配送范围";
+    public static final String EXPORT_RANGE_ERROR = "导出日期区间不合法";
+    public static final String CART_ITEM_UNAVAILABLE = "购物车中有商品已停售，请重新选择";
 
 
 
@@ -0,0 +1,21 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 购物车存储方式：mysql、redis
+     * redis模式下购物车保存在redis哈希中，由定时任务异步写回mysql
+     */
+    private String store = "mysql";
+    private long ttl = 7 * 24 * 60 * 60 * 1000L; //redis中购物车的有效期，单位毫秒
+    private long flushDelay = 5000; //写回mysql的间隔，单位毫秒
+    private int flushBatchSize = 100; //每次写回的最多用户数
+
+}
@@ -0,0 +1,21 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.delivery")
+@Data
+public class DeliveryProperties {
+
+    private int maxDistance = 10000; //最大配送距离，单位米
+
+    /**
+     * 收货地址配送距离缓存相关配置
+     */
+    private int cacheSize = 10000; //本地缓存最多保存的地址数
+    private long cacheTtl = 24 * 60 * 60 * 1000L; //缓存有效期，单位毫秒
+    private boolean redisEnabled = false; //是否同时缓存到redis，多实例部署时共享
+
+}
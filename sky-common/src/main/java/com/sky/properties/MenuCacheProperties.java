@@ -0,0 +1,26 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.menu-cache")
+@Data
+public class MenuCacheProperties {
+
+    /**
+     * 菜单本地缓存（一级缓存）相关配置，二级缓存为redis
+     */
+    private long localMaxSize = 1000; //本地缓存最多保存的分类数
+    private long localTtl = 5 * 60 * 1000L; //本地缓存有效期，单位毫秒
+    private long redisTtl = 60 * 60 * 1000L; //redis缓存有效期，单位毫秒，清理通知丢失时兜底
+
+    /**
+     * 缓存被清理后，是否先返回本机保留的旧数据，同时在后台重新加载
+     */
+    private boolean staleWhileRevalidate = false;
+    private long staleTtl = 60 * 1000L; //旧数据最长保留时间，单位毫秒
+    private int refreshThreads = 2; //后台重新加载的线程数
+
+}
@@ -0,0 +1,21 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-number")
+@Data
+public class OrderNumberProperties {
+
+    /**
+     * 订单号生成器配置，多节点部署时每个节点的workerId必须不同
+     * 未配置workerId时从redis中自动租用
+     */
+    private Long workerId; //节点id，0 ~ 1023，为空时自动分配
+    private long workerLeaseTime = 180000; //自动分配的workerId租约时长，毫秒
+    private long workerRenewInterval = 60000; //续租间隔，毫秒
+    private long epoch = 1672531200000L; //起始时间，2023-01-01 00:00:00（东八区）
+
+}
@@ -0,0 +1,20 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-timeout")
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 待支付订单超时取消的配置，到期时间保存在redis有序集合中
+     */
+    private long timeout = 15; //下单后多久未支付自动取消，单位分钟
+    private long pollInterval = 500; //检查到期订单的间隔，单位毫秒
+    private int batchSize = 100; //每次最多取消的订单数
+    private long claimTimeout = 30000; //领取后未完成取消时，多久后可被重新领取，单位毫秒
+
+}
@@ -0,0 +1,21 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Component
+@ConfigurationProperties(prefix = "sky.pricing")
+@Data
+public class PricingProperties {
+
+    /**
+     * 下单时服务端计算订单金额使用的费用，与小程序端的计算规则一致
+     */
+    private int packFee = 1; //每份商品的打包费，单位元
+    private BigDecimal deliveryFee = new BigDecimal("6"); //配送费
+    private BigDecimal tablewareFee = BigDecimal.ZERO; //每套餐具的费用
+
+}
@@ -0,0 +1,18 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.redis-value")
+@Data
+public class RedisValueProperties {
+
+    /**
+     * redis value的序列化方式：jdk、json、smile（二进制json）
+     * 读取时会根据数据头自动识别，切换序列化方式后旧数据仍可读取
+     */
+    private String serializer = "smile";
+
+}
@@ -0,0 +1,24 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 导出运营数据报表相关配置
+     */
+    private int exportRowWindow = 100; //流式写入时内存中保留的行数，超出部分刷到临时文件
+    private int exportDefaultDays = 30; //未指定区间时默认导出最近多少天
+    private int exportMaxDays = 366; //单次导出允许的最大天数
+
+    /**
+     * 每日营业数据汇总相关配置
+     */
+    private int statsBackfillDays = 366; //封存任务向前检查的天数，缺少汇总数据的日期（如上线前的日期）会被补齐
+
+}
@@ -0,0 +1,19 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.websocket")
+@Data
+public class WebSocketProperties {
+
+    /**
+     * 管理端websocket推送配置，消息由后台线程异步发送
+     */
+    private int sendThreads = 2; //发送消息的线程数
+    private int queueCapacity = 100; //每个连接最多积压的消息数，超出时丢弃最早的消息
+    private long sendTimeout = 5000; //单条消息发送超时，单位毫秒，超时的连接会被关闭
+
+}
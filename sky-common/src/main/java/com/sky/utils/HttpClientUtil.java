@@ -11,7 +11,9 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
@@ -19,6 +21,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Http工具类
@@ -27,6 +30,43 @@ public class HttpClientUtil {
 
     static final  int TIMEOUT_MSEC = 5 * 1000;
 
+    static final int CONNECT_TIMEOUT_MSEC = 2 * 1000; //建立连接超时
+    static final int SOCKET_TIMEOUT_MSEC = TIMEOUT_MSEC; //读取数据超时
+    static final int CONNECTION_REQUEST_TIMEOUT_MSEC = 1000; //从连接池获取连接超时
+    static final int MAX_TOTAL_CONNECTIONS = 200; //连接池最大连接数
+    static final int MAX_CONNECTIONS_PER_ROUTE = 50; //每个目标主机的最大连接数
+    static final int IDLE_EVICT_SECONDS = 30; //空闲连接回收时间
+    static final int VALIDATE_AFTER_INACTIVITY_MSEC = 2 * 1000; //连接空闲超过该时间后复用前先校验
+
+    private static final PoolingHttpClientConnectionManager CONNECTION_MANAGER;
+
+    /**
+     * 全局共享的连接池客户端，复用keep-alive连接，避免每次请求重新握手
+     */
+    private static final CloseableHttpClient HTTP_CLIENT;
+
+    static {
+        CONNECTION_MANAGER = new PoolingHttpClientConnectionManager();
+        CONNECTION_MANAGER.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+        CONNECTION_MANAGER.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        CONNECTION_MANAGER.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MSEC);
+
+        HTTP_CLIENT = HttpClients.custom()
+                .setConnectionManager(CONNECTION_MANAGER)
+                .setDefaultRequestConfig(builderRequestConfig())
+                .evictExpiredConnections()
+                .evictIdleConnections(IDLE_EVICT_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 连接池统计信息：租用中、空闲、等待获取连接的请求数及最大连接数
+     * @return
+     */
+    public static PoolStats getPoolStats() {
+        return CONNECTION_MANAGER.getTotalStats();
+    }
+
     /**
      * 发送GET方式请求
      * @param url
@@ -34,8 +74,8 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 使用共享的连接池客户端
+        CloseableHttpClient httpClient = HTTP_CLIENT;
 
         String result = "";
         CloseableHttpResponse response = null;
@@ -58,13 +98,17 @@ public class HttpClientUtil {
             //判断响应状态
             if(response.getStatusLine().getStatusCode() == 200){
                 result = EntityUtils.toString(response.getEntity(),"UTF-8");
+            } else {
+                EntityUtils.consume(response.getEntity());
             }
         }catch (Exception e){
             e.printStackTrace();
         }finally {
+            // 只关闭响应，连接归还连接池
             try {
-                response.close();
-                httpClient.close();
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -81,8 +125,8 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 使用共享的连接池客户端
+        CloseableHttpClient httpClient = HTTP_CLIENT;
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -111,7 +155,9 @@ public class HttpClientUtil {
             throw e;
         } finally {
             try {
-                response.close();
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -128,8 +174,8 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+        // 使用共享的连接池客户端
+        CloseableHttpClient httpClient = HTTP_CLIENT;
         CloseableHttpResponse response = null;
         String resultString = "";
 
@@ -161,7 +207,9 @@ public class HttpClientUtil {
             throw e;
         } finally {
             try {
-                response.close();
+                if (response != null) {
+                    response.close();
+                }
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -171,9 +219,9 @@ public class HttpClientUtil {
     }
     private static RequestConfig builderRequestConfig() {
         return RequestConfig.custom()
-                .setConnectTimeout(TIMEOUT_MSEC)
-                .setConnectionRequestTimeout(TIMEOUT_MSEC)
-                .setSocketTimeout(TIMEOUT_MSEC).build();
+                .setConnectTimeout(CONNECT_TIMEOUT_MSEC)
+                .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MSEC)
+                .setSocketTimeout(SOCKET_TIMEOUT_MSEC).build();
     }
 
 }
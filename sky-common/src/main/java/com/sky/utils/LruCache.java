@@ -0,0 +1,70 @@
+package com.sky.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 容量有限、带过期时间的本地LRU缓存
+ */
+public class LruCache<K, V> {
+
+    private final long ttlMillis;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    /**
+     * @param maxSize   最多缓存的条目数，超出时淘汰最久未访问的条目
+     * @param ttlMillis 条目写入后的存活时间，毫秒
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存，不存在或已过期返回null
+     * @param key
+     * @return
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器，生成的id按时间递增，不同节点通过workerId区分
+ * 结构：41位时间戳（毫秒，相对epoch） + 10位workerId + 12位序列号
+ * 通过CAS更新状态，不加锁；同一毫秒内序列号用完时借用下一毫秒，时钟回拨时沿用上次的时间继续递增
+ */
+public class SnowflakeIdGenerator {
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long epoch;
+    // 当前使用的节点id，未分配时为null
+    private volatile Worker worker;
+    // 上次生成的时间戳和序列号：时间戳 << SEQUENCE_BITS | 序列号
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 使用固定的节点id
+     *
+     * @param workerId 节点id，0 ~ 1023，每个节点必须不同
+     * @param epoch    起始时间，毫秒
+     */
+    public SnowflakeIdGenerator(long workerId, long epoch) {
+        this(epoch);
+        this.worker = new Worker(checkWorkerId(workerId), 0, false);
+    }
+
+    /**
+     * 节点id由外部租用，通过assignWorker分配后才能生成id
+     *
+     * @param epoch 起始时间，毫秒
+     */
+    public SnowflakeIdGenerator(long epoch) {
+        if (epoch > System.currentTimeMillis()) {
+            throw new IllegalArgumentException("epoch不能晚于当前时间：" + epoch);
+        }
+        this.epoch = epoch;
+    }
+
+    /**
+     * 分配或续期租用的节点id，租约到期后nextId抛出异常，直到续租成功或换用新的节点id
+     *
+     * @param workerId      节点id，0 ~ 1023
+     * @param leaseDeadline 租约到期时间，System.nanoTime()
+     */
+    public void assignWorker(long workerId, long leaseDeadline) {
+        this.worker = new Worker(checkWorkerId(workerId), leaseDeadline, true);
+    }
+
+    private static long checkWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        return workerId;
+    }
+
+    /**
+     * 生成下一个id
+     * @return
+     */
+    public long nextId() {
+        Worker current = worker;
+        if (current == null || current.expired()) {
+            // 节点id可能已被其他节点使用，继续生成会产生重复的id
+            throw new IllegalStateException("节点id未分配或租约已过期：" + current);
+        }
+        long workerId = current.id;
+        while (true) {
+            long last = state.get();
+            long now = System.currentTimeMillis() - epoch;
+            // 进入新的毫秒序列号从0开始，否则在上一个值上加一（序列号溢出时自动进位到下一毫秒）
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << TIMESTAMP_SHIFT
+                        | workerId << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /**
+     * 节点id及其租约到期时间
+     */
+    private static class Worker {
+
+        private final long id;
+        private final long leaseDeadline;
+        private final boolean leased;
+
+        Worker(long id, long leaseDeadline, boolean leased) {
+            this.id = id;
+            this.leaseDeadline = leaseDeadline;
+            this.leased = leased;
+        }
+
+        boolean expired() {
+            return leased && System.nanoTime() - leaseDeadline > 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(id);
+        }
+    }
+}
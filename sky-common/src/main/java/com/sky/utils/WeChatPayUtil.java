@@ -13,13 +13,16 @@ import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -44,32 +47,113 @@ public class WeChatPayUtil {
     @Autowired
     private WeChatProperties weChatProperties;
 
+    //检查密钥和证书文件是否变更的最小间隔
+    private static final long RELOAD_CHECK_INTERVAL_MSEC = 60 * 1000;
+
+    //所有签名客户端共享的连接池，密钥重新加载后连接继续复用
+    private final PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+
+    //当前使用的签名客户端及其对应的密钥
+    private volatile SignedClient signedClient;
+
     /**
-     * 获取调用微信接口的客户端工具对象
+     * 签名客户端，与创建它所用的商户私钥和文件修改时间一起缓存
+     */
+    private static class SignedClient {
+        private final CloseableHttpClient httpClient;
+        private final PrivateKey merchantPrivateKey;
+        private final long privateKeyModified;
+        private final long certModified;
+        private volatile long checkedAt;
+
+        private SignedClient(CloseableHttpClient httpClient, PrivateKey merchantPrivateKey,
+                             long privateKeyModified, long certModified) {
+            this.httpClient = httpClient;
+            this.merchantPrivateKey = merchantPrivateKey;
+            this.privateKeyModified = privateKeyModified;
+            this.certModified = certModified;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 获取调用微信接口的客户端工具对象，首次使用或密钥、证书文件变更时才重新加载
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private SignedClient getSignedClient() throws IOException {
+        SignedClient current = signedClient;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.checkedAt < RELOAD_CHECK_INTERVAL_MSEC) {
+            return current;
         }
+
+        synchronized (this) {
+            current = signedClient;
+            File privateKeyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            if (current != null
+                    && current.privateKeyModified == privateKeyFile.lastModified()
+                    && current.certModified == certFile.lastModified()) {
+                current.checkedAt = now;
+                return current;
+            }
+
+            SignedClient loaded = loadSignedClient(privateKeyFile, certFile);
+            signedClient = loaded;
+            if (current != null) {
+                // 连接池是共享的，关闭旧客户端不影响正在进行的请求
+                current.httpClient.close();
+            }
+            return loaded;
+        }
+    }
+
+    /**
+     * 读取商户私钥和平台证书，构造自动签名验签的客户端
+     *
+     * @param privateKeyFile
+     * @param certFile
+     * @return
+     */
+    private SignedClient loadSignedClient(File privateKeyFile, File certFile) throws IOException {
+        long privateKeyModified = privateKeyFile.lastModified();
+        long certModified = certFile.lastModified();
+
+        //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
+        PrivateKey merchantPrivateKey;
+        try (InputStream in = new FileInputStream(privateKeyFile)) {
+            merchantPrivateKey = PemUtil.loadPrivateKey(in);
+        }
+        //加载平台证书文件
+        X509Certificate x509Certificate;
+        try (InputStream in = new FileInputStream(certFile)) {
+            x509Certificate = PemUtil.loadCertificate(in);
+        }
+        //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
+        List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
+                .withWechatPay(wechatPayCertificates);
+        builder.setConnectionManager(connectionManager);
+        builder.setConnectionManagerShared(true);
+
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        CloseableHttpClient httpClient = builder.build();
+        return new SignedClient(httpClient, merchantPrivateKey, privateKeyModified, certModified);
+    }
+
+    private static PoolingHttpClientConnectionManager createConnectionManager() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(50);
+        connectionManager.setDefaultMaxPerRoute(20);
+        return connectionManager;
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        connectionManager.shutdown();
     }
 
     /**
@@ -80,7 +164,7 @@ public class WeChatPayUtil {
      * @return
      */
     private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        CloseableHttpClient httpClient = getSignedClient().httpClient;
 
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -88,13 +172,9 @@ public class WeChatPayUtil {
         httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
         httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
         }
     }
 
@@ -105,20 +185,16 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        CloseableHttpClient httpClient = getSignedClient().httpClient;
 
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
             String bodyAsString = EntityUtils.toString(response.getEntity());
             return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
         }
     }
 
@@ -188,7 +264,7 @@ public class WeChatPayUtil {
             byte[] message = signMessage.getBytes();
 
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getSignedClient().merchantPrivateKey);
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
@@ -0,0 +1,96 @@
+package com.sky.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 对比共享连接池客户端与每次新建客户端：本地桩服务按客户端端口统计建立的tcp连接数，并输出耗时
+ */
+@Slf4j
+class HttpClientUtilTest {
+
+    private static final int REQUESTS = 500;
+
+    private HttpServer server;
+    private String url;
+    // 服务端看到的客户端地址，每个不同的端口是一条新连接
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    @BeforeAll
+    static void disableNagle() {
+        // 桩服务分两次写出响应头和响应体，keep-alive连接上会触发Nagle与延迟确认的40ms等待，真实服务端不存在该问题
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stub", exchange -> {
+            connections.add(exchange.getRemoteAddress());
+            byte[] body = "{\"status\":0}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stub";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void pooledClientReusesConnections() throws Exception {
+        // 预热
+        HttpClientUtil.doGet(url, Collections.emptyMap());
+        connections.clear();
+
+        long pooledStart = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals("{\"status\":0}", HttpClientUtil.doGet(url, Collections.singletonMap("i", String.valueOf(i))));
+        }
+        long pooledNanos = System.nanoTime() - pooledStart;
+        int pooledConnections = connections.size();
+
+        connections.clear();
+        long defaultStart = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            try (CloseableHttpClient client = HttpClients.createDefault();
+                 CloseableHttpResponse response = client.execute(new HttpGet(url + "?i=" + i))) {
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+        long defaultNanos = System.nanoTime() - defaultStart;
+        int defaultConnections = connections.size();
+
+        log.info("{}次请求 连接池：{}条连接 {}ms，每次新建客户端：{}条连接 {}ms", REQUESTS,
+                pooledConnections, pooledNanos / 1_000_000, defaultConnections, defaultNanos / 1_000_000);
+
+        // 顺序请求复用同一条keep-alive连接，每次新建客户端则每个请求一条连接
+        assertEquals(1, pooledConnections);
+        assertEquals(REQUESTS, defaultConnections);
+        // 请求结束后连接归还连接池
+        assertEquals(0, HttpClientUtil.getPoolStats().getLeased());
+        assertTrue(HttpClientUtil.getPoolStats().getAvailable() >= 1);
+    }
+}
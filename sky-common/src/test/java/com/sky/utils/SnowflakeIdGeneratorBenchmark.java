@@ -0,0 +1,70 @@
+package com.sky.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 雪花id生成吞吐量基准测试，不参与单元测试（类名不以Test结尾）
+ * 对比固定节点id和租用节点id（每次生成多一次租约检查），以及单线程和多线程争用CAS的情况
+ *
+ * 运行：mvn -pl sky-common test-compile 后在IDE中执行本类的main方法；
+ * 命令行可先用 mvn -pl sky-common dependency:build-classpath -Dmdep.outputFile=cp.txt 导出类路径，
+ * 再执行 java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main SnowflakeIdGeneratorBenchmark
+ * 序列号用完时借用下一毫秒，吞吐量不受每毫秒4096个的限制
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private static final long EPOCH = 1672531200000L;
+
+    private SnowflakeIdGenerator fixed;
+    private SnowflakeIdGenerator leased;
+
+    @Setup
+    public void setUp() {
+        fixed = new SnowflakeIdGenerator(5, EPOCH);
+        leased = new SnowflakeIdGenerator(EPOCH);
+        leased.assignWorker(5, System.nanoTime() + TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long fixedWorker() {
+        return fixed.nextId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long leasedWorker() {
+        return leased.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long fixedWorkerContended() {
+        return fixed.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long leasedWorkerContended() {
+        return leased.nextId();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SnowflakeIdGeneratorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
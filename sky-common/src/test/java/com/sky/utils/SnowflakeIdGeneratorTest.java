@@ -0,0 +1,116 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 雪花id在多线程下唯一且单调递增
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long EPOCH = 1672531200000L;
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 200_000;
+
+    @Test
+    void concurrentIdsAreUniqueAndIncreasing() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5, EPOCH);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    long[] ids = new long[IDS_PER_THREAD];
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        ids[i] = generator.nextId();
+                    }
+                    return ids;
+                }));
+            }
+
+            Set<Long> all = new HashSet<>(THREADS * IDS_PER_THREAD * 2);
+            for (Future<long[]> future : futures) {
+                long[] ids = future.get(60, TimeUnit.SECONDS);
+                for (int i = 0; i < ids.length; i++) {
+                    // 同一线程内严格递增
+                    if (i > 0) {
+                        assertTrue(ids[i] > ids[i - 1], "id未递增：" + ids[i - 1] + " -> " + ids[i]);
+                    }
+                    // 所有节点号都是5
+                    assertEquals(5, (ids[i] >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+                    assertTrue(all.add(ids[i]), "id重复：" + ids[i]);
+                }
+            }
+            assertEquals(THREADS * IDS_PER_THREAD, all.size());
+
+            // 并发结束后生成的id大于之前所有的id
+            long max = all.stream().mapToLong(Long::longValue).max().getAsLong();
+            assertTrue(generator.nextId() > max);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, EPOCH);
+        // 远超单毫秒4096个序列号
+        long previous = generator.nextId();
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        // 借用的时间戳不会超前太多
+        long timestamp = (previous >>> 22) + EPOCH;
+        assertTrue(timestamp - System.currentTimeMillis() < 100);
+    }
+
+    @Test
+    void differentWorkersNeverCollide() {
+        SnowflakeIdGenerator a = new SnowflakeIdGenerator(1, EPOCH);
+        SnowflakeIdGenerator b = new SnowflakeIdGenerator(2, EPOCH);
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(ids.add(a.nextId()));
+            assertTrue(ids.add(b.nextId()));
+        }
+    }
+
+    @Test
+    void leasedGeneratorOnlyIssuesIdsWithinLease() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(EPOCH);
+        // 未分配节点id
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.assignWorker(3, System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+        long id = generator.nextId();
+        assertEquals(3, (id >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+
+        // 租约已到期
+        generator.assignWorker(3, System.nanoTime() - 1);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // 换用新的节点id后继续递增
+        generator.assignWorker(4, System.nanoTime() + TimeUnit.SECONDS.toNanos(10));
+        long next = generator.nextId();
+        assertEquals(4, (next >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID);
+        assertTrue(next > id);
+    }
+
+    @Test
+    void invalidWorkerIdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1, EPOCH));
+        assertThrows(IllegalArgumentException.class,
+                () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1, EPOCH));
+    }
+}
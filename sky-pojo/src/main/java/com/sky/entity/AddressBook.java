@@ -58,4 +58,10 @@ public class AddressBook implements Serializable {
 
     //是否默认 0否 1是
     private Integer isDefault;
+
+    //到店铺的配送距离（米），保存地址时计算
+    private Integer distance;
+
+    //计算配送距离时使用的店铺坐标，店铺坐标变更后保存的距离不再使用
+    private String distanceOrigin;
 }
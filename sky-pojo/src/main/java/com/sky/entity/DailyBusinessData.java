@@ -0,0 +1,27 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * 按日期分组的营业数据查询结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyBusinessData {
+    private LocalDate date;
+    //营业额
+    private Double turnover;
+    //订单总数
+    private Integer totalOrderCount;
+    //有效订单数
+    private Integer validOrderCount;
+    //新增用户数
+    private Integer newUsers;
+}
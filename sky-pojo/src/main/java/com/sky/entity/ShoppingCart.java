@@ -37,6 +37,9 @@ public class ShoppingCart implements Serializable {
     //口味
     private String dishFlavor;
 
+    //商品标识，同一用户下唯一
+    private String itemKey;
+
     //数量
     private Integer number;
 
@@ -0,0 +1,28 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HttpPoolStatsVO implements Serializable {
+
+    //租用中的连接数
+    private Integer leased;
+
+    //空闲可复用的连接数
+    private Integer available;
+
+    //等待获取连接的请求数
+    private Integer pending;
+
+    //最大连接数
+    private Integer max;
+
+}
@@ -0,0 +1,31 @@
+package com.sky.vo;
+
+import com.sky.entity.Category;
+import com.sky.entity.Setmeal;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * C端完整菜单，菜品和套餐通过categoryId关联到分类
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuVO implements Serializable {
+
+    //启用中的分类
+    private List<Category> categoryList;
+
+    //起售中的菜品，包含口味
+    private List<DishVO> dishList;
+
+    //起售中的套餐
+    private List<Setmeal> setmealList;
+
+}
@@ -0,0 +1,43 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskMetricsVO implements Serializable {
+
+    //任务（租约）名称
+    private String name;
+
+    //获取租约成功次数
+    private Long acquiredCount;
+
+    //租约被其他节点持有而跳过的次数
+    private Long skippedCount;
+
+    //获取租约出错的次数
+    private Long errorCount;
+
+    //执行失败次数
+    private Long failedCount;
+
+    //执行总耗时，毫秒
+    private Long totalDuration;
+
+    //最长执行耗时，毫秒
+    private Long maxDuration;
+
+    //最近一次执行耗时，毫秒
+    private Long lastDuration;
+
+    //最近一次获取的租约token
+    private Long lastToken;
+
+}
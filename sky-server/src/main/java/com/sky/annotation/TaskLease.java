@@ -0,0 +1,26 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，用于标识定时任务在集群中同一时间只由一个节点执行
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TaskLease {
+
+    //租约名称，集群内唯一
+    String value();
+
+    //租约时长，单位毫秒，需要大于任务的最长执行时间
+    long leaseTime() default 60 * 1000L;
+
+    //租约最短持有时间，单位毫秒，不超过leaseTime；任务提前结束时租约保留到该时间后自动过期
+    //cron任务在各节点按本地时钟触发，立即释放时，时钟较慢的节点随后仍能获取租约并重复执行同一次触发
+    //应大于节点间的时钟偏差，并小于触发间隔
+    long minHold() default 0;
+
+}
@@ -0,0 +1,71 @@
+package com.sky.aspect;
+
+import com.sky.annotation.TaskLease;
+import com.sky.lock.Lease;
+import com.sky.lock.LeaseContext;
+import com.sky.lock.LeaseManager;
+import com.sky.task.TaskMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 自定义切面，定时任务执行前获取集群租约，获取失败说明其他节点正在执行，本次跳过
+ * 任务结束后释放租约；设置了minHold时，租约至少保留到minHold后才过期
+ */
+@Aspect
+@Component
+@Slf4j
+public class TaskLeaseAspect {
+
+    @Autowired
+    private LeaseManager leaseManager;
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    @Around("execution(* com.sky.task.*.*(..)) && @annotation(taskLease)")
+    public Object around(ProceedingJoinPoint joinPoint, TaskLease taskLease) throws Throwable {
+        String name = taskLease.value();
+
+        Lease lease;
+        try {
+            lease = leaseManager.tryAcquire(name, taskLease.leaseTime());
+        } catch (Exception e) {
+            // 无法确认是否有其他节点在执行，本次跳过
+            log.error("获取任务租约失败：{}", name, e);
+            taskMetrics.recordError(name);
+            return null;
+        }
+        if (lease == null) {
+            taskMetrics.recordSkipped(name);
+            return null;
+        }
+        taskMetrics.recordAcquired(name, lease.getToken());
+
+        long begin = System.currentTimeMillis();
+        boolean success = false;
+        LeaseContext.setCurrentLease(lease);
+        try {
+            Object result = joinPoint.proceed();
+            success = true;
+            return result;
+        } finally {
+            LeaseContext.removeCurrentLease();
+            taskMetrics.recordDuration(name, System.currentTimeMillis() - begin, success);
+            try {
+                // 未到最短持有时间时保留租约，避免时钟较慢的节点重复执行同一次触发
+                long remaining = Math.min(taskLease.minHold(), taskLease.leaseTime()) - (System.currentTimeMillis() - begin);
+                if (remaining > 0) {
+                    leaseManager.hold(lease, remaining);
+                } else {
+                    leaseManager.release(lease);
+                }
+            } catch (Exception e) {
+                log.error("释放任务租约失败：{}", lease, e);
+            }
+        }
+    }
+}
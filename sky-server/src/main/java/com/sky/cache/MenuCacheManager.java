@@ -0,0 +1,335 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.entity.Setmeal;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * C端菜单缓存管理，按分类缓存，管理端修改时只清理受影响的分类
+ * 一级缓存为本机Caffeine，二级缓存为redis，清理时通过redis发布订阅通知所有节点清理本地缓存
+ * 同一个key同时未命中时只有一个请求查询数据库，其余请求等待并共享结果
+ * redis中每个key有一个版本号，清理时版本号加一，加载结果只在版本号未变化时写回redis，避免其他节点清理前开始的加载写回旧数据
+ * 菜单缓存被清理时，完整菜单快照和商品快照一并失效
+ */
+@Component
+@Slf4j
+public class MenuCacheManager implements MessageListener {
+
+    private static final String DISH_KEY_PREFIX = "dish_";
+    private static final String SETMEAL_KEY_PREFIX = "setmeal_";
+    private static final String MENU_SNAPSHOT_KEY = "menu_snapshot";
+    private static final String EVICT_CHANNEL = "menu_cache_evict";
+    private static final String VERSION_KEY_SUFFIX = "_version";
+    private static final int REFRESH_QUEUE_SIZE = 100;
+
+    // 版本号与加载前读取的一致时才写入缓存，KEYS: 缓存key、版本号key，ARGV: 版本号、缓存值、过期时间
+    private static final RedisScript<Long> WRITE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) " +
+            "return 1", Long.class);
+
+    // 先增加版本号再删除缓存，KEYS: 所有缓存key，之后是对应的版本号key
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "local n = #KEYS / 2 " +
+            "for i = 1, n do " +
+            "  redis.call('INCR', KEYS[n + i]) " +
+            "  redis.call('DEL', KEYS[i]) " +
+            "end " +
+            "return n", Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+    @Autowired
+    private ProductSnapshotCache productSnapshotCache;
+
+    private Cache<String, Object> localCache;
+    // 被清理的旧数据，开启stale-while-revalidate时使用
+    private Cache<String, Object> staleCache;
+    // 正在加载中的key
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+    private ExecutorService refreshExecutor;
+    // 完整菜单快照，任何菜单缓存被清理时一并失效
+    private volatile MenuSnapshot menuSnapshot;
+    private final AtomicLong menuVersion = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(menuCacheProperties.getLocalMaxSize())
+                .expireAfterWrite(menuCacheProperties.getLocalTtl(), TimeUnit.MILLISECONDS)
+                .build();
+        if (menuCacheProperties.isStaleWhileRevalidate()) {
+            staleCache = Caffeine.newBuilder()
+                    .maximumSize(menuCacheProperties.getLocalMaxSize())
+                    .expireAfterWrite(menuCacheProperties.getStaleTtl(), TimeUnit.MILLISECONDS)
+                    .build();
+            int threads = menuCacheProperties.getRefreshThreads();
+            refreshExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE), new ThreadPoolExecutor.DiscardPolicy());
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(EVICT_CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 查询分类下起售中的菜品，缓存不存在时通过loader查询数据库并写入缓存
+     *
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    public List<DishVO> getDishes(Long categoryId, Supplier<List<DishVO>> loader) {
+        return get(DISH_KEY_PREFIX + categoryId, loader);
+    }
+
+    /**
+     * 查询分类下起售中的套餐，缓存不存在时通过loader查询数据库并写入缓存
+     *
+     * @param categoryId
+     * @param loader
+     * @return
+     */
+    public List<Setmeal> getSetmeals(Long categoryId, Supplier<List<Setmeal>> loader) {
+        return get(SETMEAL_KEY_PREFIX + categoryId, loader);
+    }
+
+    /**
+     * 清理指定分类的菜品缓存
+     *
+     * @param categoryIds
+     */
+    public void evictDishes(Collection<Long> categoryIds) {
+        evict(DISH_KEY_PREFIX, categoryIds);
+    }
+
+    /**
+     * 清理指定分类的套餐缓存
+     *
+     * @param categoryIds
+     */
+    public void evictSetmeals(Collection<Long> categoryIds) {
+        evict(SETMEAL_KEY_PREFIX, categoryIds);
+    }
+
+    /**
+     * 获取完整菜单快照，不存在时通过builder生成，同一时间只有一个请求生成
+     *
+     * @param builder
+     * @return
+     */
+    public MenuSnapshot getMenuSnapshot(Supplier<MenuSnapshot> builder) {
+        MenuSnapshot snapshot = menuSnapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (menuSnapshot != null) {
+                return menuSnapshot;
+            }
+            long version = menuVersion.get();
+            snapshot = builder.get();
+            // 生成期间菜单被修改过，本次结果只返回不保存
+            if (menuVersion.get() == version) {
+                menuSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 清理完整菜单快照，用于分类等不在分类缓存中的数据被修改时
+     */
+    public void evictMenu() {
+        List<String> keys = Collections.singletonList(MENU_SNAPSHOT_KEY);
+        invalidateLocal(keys);
+        stringRedisTemplate.convertAndSend(EVICT_CHANNEL, MENU_SNAPSHOT_KEY);
+    }
+
+    /**
+     * 收到其他节点（包括本节点）的清理通知，清理本地缓存
+     *
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        invalidateLocal(Arrays.asList(body.split(",")));
+    }
+
+    private <T> List<T> get(String key, Supplier<List<T>> loader) {
+        // 一级缓存
+        List<T> list = (List<T>) localCache.getIfPresent(key);
+        if (list != null) {
+            return list;
+        }
+
+        // 有旧数据时直接返回，并在后台重新加载
+        if (staleCache != null) {
+            List<T> stale = (List<T>) staleCache.getIfPresent(key);
+            if (stale != null) {
+                refreshAsync(key, loader);
+                return stale;
+            }
+        }
+
+        try {
+            return (List<T>) load(key, loader).join();
+        } catch (CompletionException e) {
+            // 抛出加载时的原始异常
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查询二级缓存，未命中时查询数据库，同一个key同时只有一个请求执行加载
+     *
+     * @param key
+     * @param loader
+     * @return
+     */
+    private CompletableFuture<Object> load(String key, Supplier<? extends List<?>> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingMap.putIfAbsent(key, future);
+        if (loading != null) {
+            return loading;
+        }
+
+        try {
+            // 先读取版本号再查询，加载期间任何节点清理该key都会使版本号变化
+            String versionKey = key + VERSION_KEY_SUFFIX;
+            String version = Objects.toString(stringRedisTemplate.opsForValue().get(versionKey), "0");
+            Object value = redisTemplate.opsForValue().get(key);
+            boolean current = true;
+            if (value == null) {
+                value = loader.get();
+                current = writeIfCurrent(key, versionKey, version, value);
+            }
+            // 加载期间key被清理过，结果可能已经过期，不放入本地缓存
+            if (loadingMap.remove(key, future) && current) {
+                localCache.put(key, value);
+                if (staleCache != null) {
+                    staleCache.invalidate(key);
+                }
+            }
+            future.complete(value);
+        } catch (Throwable e) {
+            loadingMap.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 版本号未变化时将加载结果写入redis，并设置过期时间兜底
+     *
+     * @param key
+     * @param versionKey
+     * @param version 加载前读取的版本号
+     * @param value
+     * @return 是否写入，false说明加载期间key被清理过
+     */
+    private boolean writeIfCurrent(String key, String versionKey, String version, Object value) {
+        byte[] bytes = redisTemplate.getValueSerializer().serialize(value);
+        Long written = (Long) redisTemplate.execute(WRITE_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                Arrays.asList(key, versionKey),
+                version.getBytes(StandardCharsets.UTF_8),
+                bytes,
+                String.valueOf(menuCacheProperties.getRedisTtl()).getBytes(StandardCharsets.UTF_8));
+        if (written == null || written == 0) {
+            log.info("菜单缓存加载期间已被清理，不写回redis：{}", key);
+            return false;
+        }
+        return true;
+    }
+
+    private void refreshAsync(String key, Supplier<? extends List<?>> loader) {
+        if (loadingMap.containsKey(key)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                load(key, loader).join();
+            } catch (Exception e) {
+                log.error("菜单缓存刷新失败：{}", key, e);
+            }
+        });
+    }
+
+    private void invalidateLocal(Collection<String> keys) {
+        if (staleCache != null) {
+            staleCache.putAll(localCache.getAllPresent(keys));
+        }
+        localCache.invalidateAll(keys);
+        keys.forEach(loadingMap::remove);
+        menuVersion.incrementAndGet();
+        menuSnapshot = null;
+        productSnapshotCache.invalidate();
+    }
+
+    private void evict(String prefix, Collection<Long> categoryIds) {
+        List<String> keys = categoryIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(categoryId -> prefix + categoryId)
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return;
+        }
+        log.info("清理菜单缓存：{}", keys);
+        List<String> scriptKeys = new ArrayList<>(keys);
+        keys.forEach(key -> scriptKeys.add(key + VERSION_KEY_SUFFIX));
+        stringRedisTemplate.execute(EVICT_SCRIPT, scriptKeys);
+        invalidateLocal(keys);
+        stringRedisTemplate.convertAndSend(EVICT_CHANNEL, String.join(",", keys));
+    }
+}
@@ -0,0 +1,20 @@
+package com.sky.cache;
+
+import lombok.Getter;
+
+/**
+ * 预先生成的C端菜单响应，包含json原文、gzip压缩后的内容和ETag
+ */
+@Getter
+public class MenuSnapshot {
+
+    private final String etag;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    public MenuSnapshot(String etag, byte[] json, byte[] gzip) {
+        this.etag = etag;
+        this.json = json;
+        this.gzip = gzip;
+    }
+}
@@ -0,0 +1,243 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.entity.SetmealDish;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.vo.DishItemVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 菜品和套餐的内存快照，按id查询商品信息时不访问数据库
+ * 快照生成后不再修改，管理端修改菜品或套餐时（通过菜单缓存的清理通知）以及快照超过有效期时，在后台重新生成，
+ * 生成期间继续返回旧快照；清理通知丢失时，旧数据最多保留一个有效期
+ * 返回的对象为快照内共享的对象，调用方不能修改
+ */
+@Component
+@Slf4j
+public class ProductSnapshotCache {
+
+    // 生成失败后的重试间隔
+    private static final long RETRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private SetmealDishMapper setmealDishMapper;
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+
+    private volatile Snapshot snapshot;
+    // 每次失效加一，快照记录生成时的版本
+    private final AtomicLong version = new AtomicLong();
+    // 同一时间只有一个后台生成任务
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // 生成失败后，在此时间之前不再重试
+    private volatile long retryAt = System.nanoTime();
+    private ExecutorService rebuildExecutor;
+
+    @PostConstruct
+    public void init() {
+        rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-snapshot-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 根据id查询菜品
+     *
+     * @param id
+     * @return 不存在时返回null
+     */
+    public Dish getDish(long id) {
+        Snapshot current = getSnapshot();
+        int index = Arrays.binarySearch(current.dishIds, id);
+        return index < 0 ? null : current.dishes[index];
+    }
+
+    /**
+     * 根据id查询套餐
+     *
+     * @param id
+     * @return 不存在时返回null
+     */
+    public Setmeal getSetmeal(long id) {
+        Snapshot current = getSnapshot();
+        int index = Arrays.binarySearch(current.setmealIds, id);
+        return index < 0 ? null : current.setmeals[index];
+    }
+
+    /**
+     * 根据套餐id查询包含的菜品
+     *
+     * @param setmealId
+     * @return
+     */
+    public List<DishItemVO> getDishItems(long setmealId) {
+        Snapshot current = getSnapshot();
+        int index = Arrays.binarySearch(current.setmealIds, setmealId);
+        return index < 0 ? Collections.emptyList() : current.setmealDishItems[index];
+    }
+
+    /**
+     * 快照失效，在后台重新生成，生成完成前继续使用旧快照
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        if (snapshot != null) {
+            scheduleRebuild();
+        }
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return loadFirst();
+        }
+        if (current.version != version.get()
+                || System.nanoTime() - current.loadedAt > TimeUnit.MILLISECONDS.toNanos(menuCacheProperties.getLocalTtl())) {
+            scheduleRebuild();
+        }
+        return current;
+    }
+
+    /**
+     * 还没有快照时只能同步生成，只有启动后第一次查询会执行
+     *
+     * @return
+     */
+    private synchronized Snapshot loadFirst() {
+        if (snapshot == null) {
+            publish(load(version.get()));
+        }
+        return snapshot;
+    }
+
+    private void scheduleRebuild() {
+        if (System.nanoTime() - retryAt < 0 || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(this::rebuild);
+        } catch (RejectedExecutionException e) {
+            rebuilding.set(false);
+        }
+    }
+
+    private void rebuild() {
+        try {
+            Snapshot current;
+            do {
+                current = load(version.get());
+                publish(current);
+                // 生成期间又有修改时再生成一次
+            } while (current.version != version.get());
+        } catch (Exception e) {
+            log.error("生成商品快照失败，继续使用旧快照", e);
+            retryAt = System.nanoTime() + RETRY_INTERVAL_NANOS;
+        } finally {
+            rebuilding.set(false);
+        }
+        // 释放标记前的失效通知可能没有触发生成
+        Snapshot current = snapshot;
+        if (current != null && current.version != version.get()) {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * 只用更新的快照替换当前快照
+     *
+     * @param current
+     */
+    private synchronized void publish(Snapshot current) {
+        if (snapshot == null || current.version >= snapshot.version) {
+            snapshot = current;
+        }
+    }
+
+    private Snapshot load(long version) {
+        List<Dish> dishList = dishMapper.list(new Dish());
+        List<Setmeal> setmealList = setmealMapper.list(new Setmeal());
+        List<SetmealDish> setmealDishList = setmealDishMapper.list();
+
+        Snapshot current = new Snapshot();
+        current.version = version;
+        current.loadedAt = System.nanoTime();
+
+        dishList.sort(Comparator.comparing(Dish::getId));
+        current.dishIds = new long[dishList.size()];
+        current.dishes = new Dish[dishList.size()];
+        for (int i = 0; i < dishList.size(); i++) {
+            current.dishIds[i] = dishList.get(i).getId();
+            current.dishes[i] = dishList.get(i);
+        }
+
+        setmealList.sort(Comparator.comparing(Setmeal::getId));
+        current.setmealIds = new long[setmealList.size()];
+        current.setmeals = new Setmeal[setmealList.size()];
+        for (int i = 0; i < setmealList.size(); i++) {
+            current.setmealIds[i] = setmealList.get(i).getId();
+            current.setmeals[i] = setmealList.get(i);
+        }
+
+        // 套餐包含的菜品选项，名称和份数来自套餐菜品关系，图片和描述来自菜品
+        Map<Long, List<DishItemVO>> itemMap = new HashMap<>();
+        for (SetmealDish setmealDish : setmealDishList) {
+            int index = Arrays.binarySearch(current.dishIds, setmealDish.getDishId());
+            Dish dish = index < 0 ? null : current.dishes[index];
+            DishItemVO item = DishItemVO.builder()
+                    .name(setmealDish.getName())
+                    .copies(setmealDish.getCopies())
+                    .image(dish == null ? null : dish.getImage())
+                    .description(dish == null ? null : dish.getDescription())
+                    .build();
+            itemMap.computeIfAbsent(setmealDish.getSetmealId(), k -> new ArrayList<>()).add(item);
+        }
+        current.setmealDishItems = new List[setmealList.size()];
+        for (int i = 0; i < setmealList.size(); i++) {
+            List<DishItemVO> items = itemMap.get(current.setmealIds[i]);
+            current.setmealDishItems[i] = items == null ? Collections.emptyList() : Collections.unmodifiableList(items);
+        }
+
+        log.info("生成商品快照，菜品：{}，套餐：{}", dishList.size(), setmealList.size());
+        return current;
+    }
+
+    /**
+     * id数组有序，与对象数组一一对应，通过二分查找定位
+     */
+    private static class Snapshot {
+        long version;
+        long loadedAt;
+        long[] dishIds;
+        Dish[] dishes;
+        long[] setmealIds;
+        Setmeal[] setmeals;
+        List<DishItemVO>[] setmealDishItems;
+    }
+}
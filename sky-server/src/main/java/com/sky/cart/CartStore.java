@@ -0,0 +1,57 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 购物车存储
+ */
+public interface CartStore {
+
+    /**
+     * 查询用户购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> list(Long userId);
+
+    /**
+     * 商品数量加一，购物车中没有该商品时通过detailFiller补充名称、图片、金额后新增
+     * @param shoppingCart 包含userId、dishId、setmealId、dishFlavor
+     * @param detailFiller
+     */
+    void add(ShoppingCart shoppingCart, Consumer<ShoppingCart> detailFiller);
+
+    /**
+     * 商品数量减一，减到0时删除
+     * @param shoppingCart 包含userId、dishId、setmealId、dishFlavor
+     */
+    void sub(ShoppingCart shoppingCart);
+
+    /**
+     * 批量加入购物车，商品信息已完整
+     * @param shoppingCartList
+     */
+    void addBatch(List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 清空用户购物车
+     * @param userId
+     */
+    void clear(Long userId);
+
+    /**
+     * 购物车中商品的标识：菜品为 d_菜品id_口味，套餐为 s_套餐id
+     * @param shoppingCart
+     * @return
+     */
+    static String getItemKey(ShoppingCart shoppingCart) {
+        if (shoppingCart.getDishId() != null) {
+            String flavor = shoppingCart.getDishFlavor() == null ? "" : shoppingCart.getDishFlavor();
+            return "d_" + shoppingCart.getDishId() + "_" + flavor;
+        }
+        return "s_" + shoppingCart.getSetmealId();
+    }
+}
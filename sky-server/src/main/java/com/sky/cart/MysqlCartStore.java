@@ -0,0 +1,74 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 购物车直接保存在mysql的shopping_cart表
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "mysql", matchIfMissing = true)
+public class MysqlCartStore implements CartStore {
+
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        ShoppingCart shoppingCart = ShoppingCart.builder()
+                .userId(userId)
+                .build();
+        return shoppingCartMapper.list(shoppingCart);
+    }
+
+    @Override
+    public void add(ShoppingCart shoppingCart, Consumer<ShoppingCart> detailFiller) {
+        String itemKey = CartStore.getItemKey(shoppingCart);
+
+        // 已经存在，数量加一
+        if (shoppingCartMapper.incrementNumber(shoppingCart.getUserId(), itemKey) > 0) {
+            return;
+        }
+
+        // 不存在，插入购物车数据，并发插入同一商品时由唯一索引合并数量
+        detailFiller.accept(shoppingCart);
+        shoppingCart.setItemKey(itemKey);
+        shoppingCart.setNumber(1);
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        shoppingCartMapper.upsert(shoppingCart);
+    }
+
+    @Override
+    public void sub(ShoppingCart shoppingCart) {
+        Long userId = shoppingCart.getUserId();
+        String itemKey = CartStore.getItemKey(shoppingCart);
+
+        // 数量大于1时减一，否则删除
+        // 两条语句之间数量可能被并发修改（如数量为1时被加一导致删除失败），此时重新执行
+        while (shoppingCartMapper.decrementNumber(userId, itemKey) == 0
+                && shoppingCartMapper.deleteLastOne(userId, itemKey) == 0) {
+            if (shoppingCartMapper.getNumber(userId, itemKey) == null) {
+                // 商品已不存在
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        shoppingCartList.forEach(cart -> cart.setItemKey(CartStore.getItemKey(cart)));
+        shoppingCartMapper.insertBatch(shoppingCartList);
+    }
+
+    @Override
+    public void clear(Long userId) {
+        shoppingCartMapper.deleteByUserId(userId);
+    }
+}
@@ -0,0 +1,220 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 购物车保存在redis，每个用户两个哈希：商品信息和商品数量，字段为商品标识
+ * 修改购物车时将用户记入待写回集合，由定时任务异步写回mysql
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis")
+@Slf4j
+public class RedisCartStore implements CartStore {
+
+    private static final String ITEM_KEY_PREFIX = "cart_item_";
+    private static final String NUMBER_KEY_PREFIX = "cart_number_";
+    private static final String DIRTY_KEY = "cart_dirty";
+
+    // 数量加减，并刷新有效期、记录待写回的用户；数量减到0时删除商品
+    // KEYS: 商品信息哈希, 商品数量哈希, 待写回集合  ARGV: 字段, 增量, 有效期, 用户id
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "local n = redis.call('HINCRBY', KEYS[2], ARGV[1], ARGV[2]) " +
+            "if n <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[3]) " +
+            "redis.call('SADD', KEYS[3], ARGV[4]) " +
+            "return n", Long.class);
+
+    // 写入新商品的信息并刷新有效期；数量已被并发减到0时不写入，避免留下没有数量的商品信息
+    // KEYS: 商品信息哈希, 商品数量哈希  ARGV: 字段, 商品信息, 有效期
+    private static final RedisScript<Long> PUT_ITEM_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[2], ARGV[1]) == 0 then " +
+            "  return 0 " +
+            "end " +
+            "redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[3]) " +
+            "return 1", Long.class);
+
+    // 撤销本次加的数量，其他请求同时加的数量保留；数量减到0时删除商品
+    // KEYS: 商品信息哈希, 商品数量哈希  ARGV: 字段
+    private static final RedisScript<Long> UNDO_ADD_SCRIPT = new DefaultRedisScript<>(
+            "local n = redis.call('HINCRBY', KEYS[2], ARGV[1], -1) " +
+            "if n <= 0 then " +
+            "  redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "  redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "end " +
+            "return n", Long.class);
+
+    // 清空购物车并记录待写回的用户
+    private static final RedisScript<Long> CLEAR_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1], KEYS[2]) " +
+            "return redis.call('SADD', KEYS[3], ARGV[1])", Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ShoppingCartMapper shoppingCartMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private CartProperties cartProperties;
+
+    @Override
+    public List<ShoppingCart> list(Long userId) {
+        Map<String, String> numberMap = stringRedisTemplate.<String, String>opsForHash().entries(NUMBER_KEY_PREFIX + userId);
+        if (numberMap.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, ShoppingCart> itemMap = redisTemplate.opsForHash().entries(ITEM_KEY_PREFIX + userId);
+
+        List<ShoppingCart> list = new ArrayList<>(numberMap.size());
+        numberMap.forEach((field, number) -> {
+            ShoppingCart cart = itemMap.get(field);
+            // 新商品的信息还未写入
+            if (cart == null) {
+                return;
+            }
+            cart.setNumber(Integer.valueOf(number));
+            list.add(cart);
+        });
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime));
+        return list;
+    }
+
+    @Override
+    public void add(ShoppingCart shoppingCart, Consumer<ShoppingCart> detailFiller) {
+        Long userId = shoppingCart.getUserId();
+        String field = CartStore.getItemKey(shoppingCart);
+        Long number = increment(userId, field, 1);
+
+        // 已经存在的商品只需要一次redis访问
+        if (number > 1) {
+            return;
+        }
+
+        // 新商品补充商品信息
+        try {
+            detailFiller.accept(shoppingCart);
+        } catch (RuntimeException e) {
+            stringRedisTemplate.execute(UNDO_ADD_SCRIPT,
+                    Arrays.asList(ITEM_KEY_PREFIX + userId, NUMBER_KEY_PREFIX + userId), field);
+            throw e;
+        }
+        shoppingCart.setItemKey(field);
+        shoppingCart.setNumber(null);
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        putItem(userId, field, shoppingCart);
+    }
+
+    @Override
+    public void sub(ShoppingCart shoppingCart) {
+        increment(shoppingCart.getUserId(), CartStore.getItemKey(shoppingCart), -1);
+    }
+
+    @Override
+    public void addBatch(List<ShoppingCart> shoppingCartList) {
+        // 先写商品信息再加数量，查询时不会出现只有数量的商品
+        Map<Long, Map<String, ShoppingCart>> userItemMap = new HashMap<>();
+        for (ShoppingCart cart : shoppingCartList) {
+            ShoppingCart item = new ShoppingCart();
+            BeanUtils.copyProperties(cart, item, "id", "number");
+            item.setItemKey(CartStore.getItemKey(cart));
+            userItemMap.computeIfAbsent(cart.getUserId(), k -> new HashMap<>()).putIfAbsent(item.getItemKey(), item);
+        }
+        userItemMap.forEach((userId, items) -> redisTemplate.opsForHash().putAll(ITEM_KEY_PREFIX + userId, items));
+
+        for (ShoppingCart cart : shoppingCartList) {
+            increment(cart.getUserId(), CartStore.getItemKey(cart), cart.getNumber());
+        }
+    }
+
+    @Override
+    public void clear(Long userId) {
+        // 在事务中（如下单）清空时，等事务提交后再清空，避免事务回滚后购物车已丢失
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doClear(userId);
+                }
+            });
+        } else {
+            doClear(userId);
+        }
+    }
+
+    /**
+     * 将有修改的购物车写回mysql
+     */
+    public void flush() {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, cartProperties.getFlushBatchSize());
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+
+        for (String userIdStr : userIds) {
+            Long userId = Long.valueOf(userIdStr);
+            try {
+                List<ShoppingCart> list = list(userId);
+                list.forEach(cart -> cart.setUserId(userId));
+                transactionTemplate.executeWithoutResult(status -> {
+                    shoppingCartMapper.deleteByUserId(userId);
+                    if (!list.isEmpty()) {
+                        shoppingCartMapper.insertBatch(list);
+                    }
+                });
+            } catch (Exception e) {
+                log.error("购物车写回失败，用户id：{}", userId, e);
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, userIdStr);
+            }
+        }
+    }
+
+    private Long increment(Long userId, String field, int delta) {
+        return stringRedisTemplate.execute(INCREMENT_SCRIPT,
+                Arrays.asList(ITEM_KEY_PREFIX + userId, NUMBER_KEY_PREFIX + userId, DIRTY_KEY),
+                field, String.valueOf(delta), String.valueOf(cartProperties.getTtl()), String.valueOf(userId));
+    }
+
+    private void putItem(Long userId, String field, ShoppingCart item) {
+        // 商品信息哈希的有效期在写入时设置，首次加入时数量脚本执行时该哈希还不存在
+        byte[] bytes = redisTemplate.getHashValueSerializer().serialize(item);
+        redisTemplate.execute(PUT_ITEM_SCRIPT, RedisSerializer.byteArray(), RedisSerializer.string(),
+                Arrays.asList(ITEM_KEY_PREFIX + userId, NUMBER_KEY_PREFIX + userId),
+                field.getBytes(StandardCharsets.UTF_8),
+                bytes,
+                String.valueOf(cartProperties.getTtl()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void doClear(Long userId) {
+        stringRedisTemplate.execute(CLEAR_SCRIPT,
+                Arrays.asList(ITEM_KEY_PREFIX + userId, NUMBER_KEY_PREFIX + userId, DIRTY_KEY),
+                String.valueOf(userId));
+    }
+}
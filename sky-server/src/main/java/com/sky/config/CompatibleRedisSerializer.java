@@ -0,0 +1,89 @@
+package com.sky.config;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * redis value序列化器
+ * 写入时使用配置的序列化方式，读取时根据数据头识别实际的格式，
+ * 这样切换序列化方式后，redis中已有的旧数据在过期或被清理之前仍然可以正常读取
+ */
+public class CompatibleRedisSerializer implements RedisSerializer<Object> {
+
+    public static final String JDK = "jdk";
+    public static final String JSON = "json";
+    public static final String SMILE = "smile";
+
+    // jdk序列化数据的魔数 0xACED
+    private static final byte JDK_MAGIC_0 = (byte) 0xAC;
+    private static final byte JDK_MAGIC_1 = (byte) 0xED;
+    // smile数据头 ":)\n"
+    private static final byte[] SMILE_HEADER = {':', ')', '\n'};
+
+    private final RedisSerializer<Object> jdkSerializer;
+    private final RedisSerializer<Object> jsonSerializer;
+    private final RedisSerializer<Object> smileSerializer;
+    private final RedisSerializer<Object> writer;
+
+    public CompatibleRedisSerializer(String type) {
+        jdkSerializer = new JdkSerializationRedisSerializer();
+        jsonSerializer = new GenericJackson2JsonRedisSerializer(createObjectMapper(new ObjectMapper()));
+        // 列表中每个元素都会带上类型名，开启字符串值引用后重复的类型名只保存一次
+        SmileFactory smileFactory = new SmileFactory().enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+        smileSerializer = new GenericJackson2JsonRedisSerializer(createObjectMapper(new ObjectMapper(smileFactory)));
+
+        if (JDK.equalsIgnoreCase(type)) {
+            writer = jdkSerializer;
+        } else if (JSON.equalsIgnoreCase(type)) {
+            writer = jsonSerializer;
+        } else if (SMILE.equalsIgnoreCase(type)) {
+            writer = smileSerializer;
+        } else {
+            throw new IllegalArgumentException("不支持的redis序列化方式：" + type);
+        }
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        return writer.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length >= 2 && bytes[0] == JDK_MAGIC_0 && bytes[1] == JDK_MAGIC_1) {
+            return jdkSerializer.deserialize(bytes);
+        }
+        if (bytes.length >= SMILE_HEADER.length
+                && bytes[0] == SMILE_HEADER[0] && bytes[1] == SMILE_HEADER[1] && bytes[2] == SMILE_HEADER[2]) {
+            return smileSerializer.deserialize(bytes);
+        }
+        return jsonSerializer.deserialize(bytes);
+    }
+
+    /**
+     * 配置对象映射器：记录类型信息以便反序列化为原来的类型，时间类型按ISO格式保存不丢失精度
+     *
+     * @param objectMapper
+     * @return
+     */
+    private static ObjectMapper createObjectMapper(ObjectMapper objectMapper) {
+        objectMapper.registerModule(new JavaTimeModule());
+        // 实体类增加字段后仍能读取旧数据
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        return objectMapper;
+    }
+}
@@ -0,0 +1,29 @@
+package com.sky.config;
+
+import com.sky.lock.WorkerIdRegistry;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class OrderNumberConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public SnowflakeIdGenerator orderNumberGenerator(OrderNumberProperties orderNumberProperties,
+                                                     WorkerIdRegistry workerIdRegistry) {
+        log.info("开始创建订单号生成器：{}", orderNumberProperties);
+        // 未显式配置时从redis租用，避免多个节点都使用默认值导致订单号重复
+        Long workerId = orderNumberProperties.getWorkerId();
+        if (workerId != null) {
+            return new SnowflakeIdGenerator(workerId, orderNumberProperties.getEpoch());
+        }
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(orderNumberProperties.getEpoch());
+        workerIdRegistry.register(generator);
+        return generator;
+    }
+}
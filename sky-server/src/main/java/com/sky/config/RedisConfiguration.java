@@ -1,10 +1,12 @@
 package com.sky.config;
 
+import com.sky.properties.RedisValueProperties;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -12,14 +14,26 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 public class RedisConfiguration {
 
     @Bean
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory){
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory, RedisValueProperties redisValueProperties){
         log.info("开始创建redis模板对象...");
         RedisTemplate redisTemplate = new RedisTemplate();
         // 设置redis的连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         // 设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
-//        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        // 设置redis value的序列化器，默认使用体积更小的smile，兼容读取jdk序列化的旧数据
+        CompatibleRedisSerializer valueSerializer = new CompatibleRedisSerializer(redisValueProperties.getSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashValueSerializer(valueSerializer);
         return redisTemplate;
     }
+
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        log.info("开始创建redis消息监听容器...");
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
 }
@@ -1,8 +1,13 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuCacheManager;
+import com.sky.constant.StatusConstant;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.DishService;
@@ -12,11 +17,11 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/admin/dish")
@@ -29,7 +34,13 @@ public class DishController {
     @Autowired
     private ServerProperties serverProperties;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealDishMapper setmealDishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private MenuCacheManager menuCacheManager;
 
     @PostMapping
     @ApiOperation("新增菜品")
@@ -37,7 +48,8 @@ public class DishController {
         log.info("新增菜品：{}", dishDTO);
         dishService.saveWithFlavor(dishDTO);
 
-        cleancache(dishDTO.getId().toString());
+        // 清理新菜品所属分类的缓存
+        menuCacheManager.evictDishes(Collections.singletonList(dishDTO.getCategoryId()));
         return Result.success();
     }
 
@@ -60,10 +72,12 @@ public class DishController {
     public Result delete(@RequestParam List<Long> ids) {
         log.info("菜品批量删除：{}", ids);
 
-        // 删除所有dish_开头的key
-        cleancache("dish_*");
+        // 删除前先查出受影响的分类
+        List<Long> categoryIds = ids.isEmpty() ? Collections.emptyList() : dishMapper.getCategoryIdsByIds(ids);
 
         dishService.deleteBatch(ids);
+
+        menuCacheManager.evictDishes(categoryIds);
         return Result.success();
     }
 
@@ -92,10 +106,18 @@ public class DishController {
     @ApiOperation("修改菜品")
     public Result update(@RequestBody DishDTO dishDTO) {
         log.info("修改菜品：{}", dishDTO);
+        // 修改分类时原分类和新分类的缓存都要清理
+        Dish dishDB = dishMapper.getById(dishDTO.getId());
+
         dishService.updateWithFlavor(dishDTO);
 
         // 清理缓存
-        cleancache("dish_*");
+        List<Long> categoryIds = new ArrayList<>();
+        categoryIds.add(dishDTO.getCategoryId());
+        if (dishDB != null) {
+            categoryIds.add(dishDB.getCategoryId());
+        }
+        menuCacheManager.evictDishes(categoryIds);
 
         return Result.success();
     }
@@ -112,7 +134,17 @@ public class DishController {
         log.info("修改启售停售状态：{}", status);
         dishService.startOrStop(status, id);
 
-        cleancache("dish_*");
+        Dish dish = dishMapper.getById(id);
+        if (dish != null) {
+            menuCacheManager.evictDishes(Collections.singletonList(dish.getCategoryId()));
+        }
+        // 停售菜品会同时停售关联的套餐
+        if (StatusConstant.DISABLE.equals(status)) {
+            List<Long> setmealIds = setmealDishMapper.getSetmaealIdsByDishIds(Collections.singletonList(id));
+            if (setmealIds != null && !setmealIds.isEmpty()) {
+                menuCacheManager.evictSetmeals(setmealMapper.getCategoryIdsByIds(setmealIds));
+            }
+        }
         return Result.success();
     }
 
@@ -131,9 +163,4 @@ public class DishController {
         List<Dish> list = dishService.list(dish);
         return Result.success(list);
     }
-
-    private void cleancache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
 }
@@ -0,0 +1,36 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.utils.HttpClientUtil;
+import com.sky.vo.HttpPoolStatsVO;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.apache.http.pool.PoolStats;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 运行状态监控
+ */
+@RestController
+@RequestMapping("/admin/monitor")
+@Api(tags = "运行状态监控相关接口")
+public class MonitorController {
+
+    /**
+     * 查询本节点调用微信、百度地图等外部接口的http连接池状态
+     * @return
+     */
+    @GetMapping("/httpPool")
+    @ApiOperation("查询http连接池状态")
+    public Result<HttpPoolStatsVO> httpPool() {
+        PoolStats stats = HttpClientUtil.getPoolStats();
+        return Result.success(HttpPoolStatsVO.builder()
+                .leased(stats.getLeased())
+                .available(stats.getAvailable())
+                .pending(stats.getPending())
+                .max(stats.getMax())
+                .build());
+    }
+}
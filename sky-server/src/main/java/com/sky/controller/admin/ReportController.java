@@ -101,11 +101,18 @@ public class ReportController {
 
     /**
      * 导出运营数据报表
+     * @param begin 可选，不传则导出最近30天
+     * @param end
      * @param response
      */
     @GetMapping("/export")
     @ApiOperation("导出运营数据报表")
-    public void export(HttpServletResponse response) throws IOException {
-        reportService.exportBusinessData(response);
+    public void export(
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end,
+            HttpServletResponse response
+    ) throws IOException {
+        log.info("导出运营数据报表：{}, {}", begin, end);
+        reportService.exportBusinessData(begin, end, response);
     }
 }
@@ -1,7 +1,10 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuCacheManager;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.SetmealService;
@@ -10,9 +13,10 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @RestController
@@ -23,6 +27,10 @@ public class SetmealController {
 
     @Autowired
     private SetmealService setmealService;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private MenuCacheManager menuCacheManager;
 
     /**
      * 新增套餐
@@ -31,10 +39,10 @@ public class SetmealController {
      */
     @PostMapping
     @ApiOperation("新增套餐")
-    @CacheEvict(cacheNames = "setmealCache", key = "#setmealDTO.categoryId")
     public Result save(@RequestBody SetmealDTO setmealDTO){
         log.info("新增套餐：{}", setmealDTO);
         setmealService.saveWithDish(setmealDTO);
+        menuCacheManager.evictSetmeals(Collections.singletonList(setmealDTO.getCategoryId()));
         return Result.success();
     }
 
@@ -45,10 +53,12 @@ public class SetmealController {
      */
     @DeleteMapping
     @ApiOperation("删除套餐")
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result delete(@RequestParam List<Long> ids){
         log.info("删除套餐：{}", ids);
+        // 删除前先查出受影响的分类
+        List<Long> categoryIds = ids.isEmpty() ? Collections.emptyList() : setmealMapper.getCategoryIdsByIds(ids);
         setmealService.delete(ids);
+        menuCacheManager.evictSetmeals(categoryIds);
         return Result.success();
     }
 
@@ -72,10 +82,18 @@ public class SetmealController {
      */
     @PutMapping
     @ApiOperation("修改套餐数据")
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result update(@RequestBody SetmealDTO setmealDTO){
         log.info("修改套餐数据：{}", setmealDTO);
+        // 修改分类时原分类和新分类的缓存都要清理
+        Setmeal setmealDB = setmealMapper.getById(setmealDTO.getId());
         setmealService.update(setmealDTO);
+
+        List<Long> categoryIds = new ArrayList<>();
+        categoryIds.add(setmealDTO.getCategoryId());
+        if (setmealDB != null) {
+            categoryIds.add(setmealDB.getCategoryId());
+        }
+        menuCacheManager.evictSetmeals(categoryIds);
         return Result.success();
     }
 
@@ -99,10 +117,14 @@ public class SetmealController {
      */
     @PostMapping("/status/{status}")
     @ApiOperation("启售停售套餐")
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result startOrStop(@PathVariable Integer status, Long id){
         log.info("启售停售套餐：{}, {}", status, id);
         setmealService.startOrStop(status, id);
+
+        Setmeal setmeal = setmealMapper.getById(id);
+        if (setmeal != null) {
+            menuCacheManager.evictSetmeals(Collections.singletonList(setmeal.getCategoryId()));
+        }
         return Result.success();
     }
 }
@@ -0,0 +1,35 @@
+package com.sky.controller.admin;
+
+import com.sky.result.Result;
+import com.sky.task.TaskMetrics;
+import com.sky.vo.TaskMetricsVO;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 定时任务
+ */
+@RestController
+@RequestMapping("/admin/task")
+@Api(tags = "定时任务相关接口")
+public class TaskController {
+
+    @Autowired
+    private TaskMetrics taskMetrics;
+
+    /**
+     * 查询本节点定时任务的租约获取和执行耗时统计
+     * @return
+     */
+    @GetMapping("/metrics")
+    @ApiOperation("查询定时任务统计")
+    public Result<List<TaskMetricsVO>> metrics() {
+        return Result.success(taskMetrics.list());
+    }
+}
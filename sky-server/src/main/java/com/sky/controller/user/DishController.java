@@ -1,5 +1,6 @@
 package com.sky.controller.user;
 
+import com.sky.cache.MenuCacheManager;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -9,7 +10,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -25,7 +25,7 @@ public class DishController {
     private DishService dishService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCacheManager menuCacheManager;
 
     /**
      * 根据分类id查询菜品
@@ -37,23 +37,13 @@ public class DishController {
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
 
-        // 构造redis中的key
-        String key = "dish_" + categoryId;
-
-        // 查询Redis中是否存在菜品数据
-        List<DishVO> list = (List<DishVO>)redisTemplate.opsForValue().get(key);
-        if (list != null && !list.isEmpty()){
-            // 存在则直接返回
-            return Result.success(list);
-        }
-
-        // 不存在，查询数据库，缓存进redis
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
-
-        list = dishService.listWithFlavor(dish);
-        redisTemplate.opsForValue().set(key, list);
+        // 优先查询缓存，不存在时查询数据库并缓存
+        List<DishVO> list = menuCacheManager.getDishes(categoryId, () -> {
+            Dish dish = new Dish();
+            dish.setCategoryId(categoryId);
+            dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
+            return dishService.listWithFlavor(dish);
+        });
 
         return Result.success(list);
     }
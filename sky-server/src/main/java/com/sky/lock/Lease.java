@@ -0,0 +1,20 @@
+package com.sky.lock;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 租约，token为每次获取时递增的防护令牌，由LeaseFence在写数据时校验
+ */
+@Getter
+@ToString
+public class Lease {
+
+    private final String name;
+    private final long token;
+
+    public Lease(String name, long token) {
+        this.name = name;
+        this.token = token;
+    }
+}
@@ -0,0 +1,22 @@
+package com.sky.lock;
+
+/**
+ * 当前线程持有的租约
+ */
+public class LeaseContext {
+
+    public static ThreadLocal<Lease> threadLocal = new ThreadLocal<>();
+
+    public static void setCurrentLease(Lease lease) {
+        threadLocal.set(lease);
+    }
+
+    public static Lease getCurrentLease() {
+        return threadLocal.get();
+    }
+
+    public static void removeCurrentLease() {
+        threadLocal.remove();
+    }
+
+}
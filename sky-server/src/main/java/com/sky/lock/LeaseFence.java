@@ -0,0 +1,41 @@
+package com.sky.lock;
+
+import com.sky.mapper.TaskFenceMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+/**
+ * 在数据库中校验租约token：修改数据前在同一事务中把task_fence表中的token推进到当前token，
+ * 已有更大的token写入过数据（租约过期后被其他节点获取）时不再执行
+ * token记录的行锁保证新旧持有者的修改不会交错
+ */
+@Component
+public class LeaseFence {
+
+    @Autowired
+    private TaskFenceMapper taskFenceMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 校验token后在同一事务中执行修改
+     *
+     * @param lease
+     * @param action
+     * @return 租约已被更新的持有者使用时返回null，不执行修改
+     */
+    public <T> T execute(Lease lease, Supplier<T> action) {
+        return transactionTemplate.execute(status -> {
+            if (taskFenceMapper.advance(lease.getName(), lease.getToken()) == 0) {
+                taskFenceMapper.init(lease.getName());
+                if (taskFenceMapper.advance(lease.getName(), lease.getToken()) == 0) {
+                    return null;
+                }
+            }
+            return action.get();
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package com.sky.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * 基于redis的租约，通过SET NX PX保证同一时间只有一个持有者，超时自动释放
+ * 每次获取成功时生成递增的token，释放时要求token一致，避免误释放其他节点获取的新租约；
+ * 修改数据时由LeaseFence在数据库中校验token，redis中的租约只用于选出执行的节点
+ */
+@Component
+@Slf4j
+public class LeaseManager {
+
+    private static final String LEASE_KEY_PREFIX = "lease_";
+    private static final String TOKEN_KEY_PREFIX = "lease_token_";
+
+    // 租约未被持有时生成新token并写入  KEYS: 租约, token计数器  ARGV: 租约时长
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "local token = redis.call('INCR', KEYS[2]) " +
+            "redis.call('SET', KEYS[1], token, 'NX', 'PX', ARGV[1]) " +
+            "return token", Long.class);
+
+    // token一致时删除  KEYS: 租约  ARGV: token
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    // token一致时修改剩余时长  KEYS: 租约  ARGV: token, 剩余时长
+    private static final RedisScript<Long> HOLD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 尝试获取租约
+     *
+     * @param name
+     * @param leaseTime 租约时长，毫秒
+     * @return 获取失败（已被其他节点持有）返回null
+     */
+    public Lease tryAcquire(String name, long leaseTime) {
+        Long token = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Arrays.asList(LEASE_KEY_PREFIX + name, TOKEN_KEY_PREFIX + name), String.valueOf(leaseTime));
+        if (token == null || token == 0) {
+            return null;
+        }
+        return new Lease(name, token);
+    }
+
+    /**
+     * 释放租约
+     *
+     * @param lease
+     */
+    public void release(Lease lease) {
+        Long released = stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Collections.singletonList(LEASE_KEY_PREFIX + lease.getName()), String.valueOf(lease.getToken()));
+        if (released == null || released == 0) {
+            log.warn("租约已过期或被其他节点获取：{}", lease);
+        }
+    }
+
+    /**
+     * 不释放租约，只将剩余时长改为holdTime，到期后自动释放
+     *
+     * @param lease
+     * @param holdTime 剩余时长，毫秒
+     */
+    public void hold(Lease lease, long holdTime) {
+        Long held = stringRedisTemplate.execute(HOLD_SCRIPT,
+                Collections.singletonList(LEASE_KEY_PREFIX + lease.getName()),
+                String.valueOf(lease.getToken()), String.valueOf(holdTime));
+        if (held == null || held == 0) {
+            log.warn("租约已过期或被其他节点获取：{}", lease);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.sky.lock;
+
+import com.sky.properties.OrderNumberProperties;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成器workerId的自动分配：未配置workerId时，从redis中租用一个未被占用的id并定期续租
+ * 节点宕机后租约过期，id可被新节点重新使用
+ * 生成器只在租约有效期内生成id：续租失败直到租约到期时停止生成，id被其他节点占用时换用新租用的id
+ */
+@Component
+@Slf4j
+public class WorkerIdRegistry {
+
+    private static final String WORKER_KEY_PREFIX = "order_worker_";
+    private static final String WORKER_COUNTER_KEY = "order_worker_counter";
+
+    // 从计数器位置开始依次尝试占用id  KEYS: 计数器  ARGV: key前缀, 持有者, 租约时长, id数量
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local n = tonumber(ARGV[4]) " +
+            "local start = redis.call('INCR', KEYS[1]) " +
+            "for i = 0, n - 1 do " +
+            "  local id = (start + i) % n " +
+            "  if redis.call('SET', ARGV[1] .. id, ARGV[2], 'NX', 'PX', ARGV[3]) then return id end " +
+            "end " +
+            "return -1", Long.class);
+
+    // 自己持有时延长租约；租约已过期且未被占用时重新占用  KEYS: workerId  ARGV: 持有者, 租约时长
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local owner = redis.call('GET', KEYS[1]) " +
+            "if owner == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+            "if not owner and redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2]) then return 1 end " +
+            "return 0", Long.class);
+
+    // 自己持有时删除  KEYS: workerId  ARGV: 持有者
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+
+    private final String owner = UUID.randomUUID().toString();
+    // 使用租用id的生成器，未注册时为null
+    private volatile SnowflakeIdGenerator generator;
+    // 租用到的workerId，未租用时为null
+    private volatile Long workerId;
+
+    /**
+     * 为生成器租用一个workerId，启动时调用，没有可用的id时启动失败
+     *
+     * @param generator
+     */
+    public synchronized void register(SnowflakeIdGenerator generator) {
+        this.generator = generator;
+        acquire();
+    }
+
+    /**
+     * 租用一个新的workerId并分配给生成器
+     */
+    private synchronized void acquire() {
+        long begin = System.nanoTime();
+        Long id = stringRedisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(WORKER_COUNTER_KEY),
+                WORKER_KEY_PREFIX, owner, String.valueOf(orderNumberProperties.getWorkerLeaseTime()),
+                String.valueOf(SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+        if (id == null || id < 0) {
+            throw new IllegalStateException("没有可用的订单号workerId，所有id均已被占用");
+        }
+        log.info("租用订单号workerId：{}", id);
+        workerId = id;
+        assign(id, begin);
+    }
+
+    /**
+     * 定期续租，续租间隔应明显小于租约时长
+     */
+    @Scheduled(fixedDelayString = "${sky.order-number.worker-renew-interval:60000}")
+    public void renew() {
+        Long id = workerId;
+        if (id == null) {
+            return;
+        }
+        try {
+            // 租约从redis执行脚本时开始计算，以发送请求前的时间作为起点更保守
+            long begin = System.nanoTime();
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(WORKER_KEY_PREFIX + id),
+                    owner, String.valueOf(orderNumberProperties.getWorkerLeaseTime()));
+            if (renewed != null && renewed == 1) {
+                assign(id, begin);
+                return;
+            }
+            // 租约过期后已被其他节点占用，立即停止使用并换用新的id
+            log.error("订单号workerId {} 已被其他节点占用，重新租用", id);
+            generator.assignWorker(id, begin);
+            acquire();
+        } catch (Exception e) {
+            // redis暂时不可用时等待下次续租，租约到期前未恢复时生成器停止生成id
+            log.warn("订单号workerId {} 续租失败：{}", id, e.getMessage());
+        }
+    }
+
+    private void assign(long id, long begin) {
+        generator.assignWorker(id, begin + TimeUnit.MILLISECONDS.toNanos(orderNumberProperties.getWorkerLeaseTime()));
+    }
+
+    @PreDestroy
+    public void release() {
+        Long id = workerId;
+        if (id == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(WORKER_KEY_PREFIX + id), owner);
+        } catch (Exception e) {
+            // 释放失败时等待租约过期
+            log.warn("订单号workerId {} 释放失败：{}", id, e.getMessage());
+        }
+    }
+}
@@ -20,9 +20,9 @@ public interface AddressBookMapper {
      */
     @Insert("insert into address_book" +
             "        (user_id, consignee, phone, sex, province_code, province_name, city_code, city_name, district_code," +
-            "         district_name, detail, label, is_default)" +
+            "         district_name, detail, label, is_default, distance, distance_origin)" +
             "        values (#{userId}, #{consignee}, #{phone}, #{sex}, #{provinceCode}, #{provinceName}, #{cityCode}, #{cityName}," +
-            "                #{districtCode}, #{districtName}, #{detail}, #{label}, #{isDefault})")
+            "                #{districtCode}, #{districtName}, #{detail}, #{label}, #{isDefault}, #{distance}, #{distanceOrigin})")
     void insert(AddressBook addressBook);
 
     /**
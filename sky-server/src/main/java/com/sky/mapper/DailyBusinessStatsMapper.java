@@ -0,0 +1,54 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessData;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyBusinessStatsMapper {
+
+    /**
+     * 查询日期区间内已封存的每日营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select stat_date as date, turnover, total_order_count, valid_order_count, new_users " +
+            "from daily_business_stats where sealed = 1 and stat_date between #{begin} and #{end}")
+    List<DailyBusinessData> getSealedByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询日期区间内已封存的日期
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select stat_date from daily_business_stats where sealed = 1 and stat_date between #{begin} and #{end}")
+    List<LocalDate> getSealedDates(LocalDate begin, LocalDate end);
+
+    /**
+     * 插入或覆盖某一天的营业数据
+     * @param data
+     * @param sealed 是否封存，封存后读取方不再回查原始数据
+     * @param readTime 查询原始数据的时间，此后被标记为未封存的日期不会被封存
+     */
+    void save(DailyBusinessData data, Boolean sealed, LocalDateTime readTime);
+
+    /**
+     * 订单状态变化时把订单下单日期的汇总标记为未封存，需要与修改订单在同一事务中执行
+     * 读取方对未封存的日期查询原始数据，由封存任务重新封存
+     * @param orderIds
+     */
+    void unsealByOrderIds(List<Long> orderIds);
+
+    /**
+     * 按状态和下单时间批量修改订单时，把涉及日期的汇总标记为未封存，需要与修改订单在同一事务中执行
+     * @param status
+     * @param orderTime
+     */
+    void unsealByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
+}
@@ -10,6 +10,7 @@ import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -41,6 +42,20 @@ public interface DishMapper {
     @Select("select * from dish where id = #{id}")
     Dish getById(Long id);
 
+    /**
+     * 根据id集合批量查询菜品
+     * @param ids
+     * @return
+     */
+    List<Dish> getByIds(Collection<Long> ids);
+
+    /**
+     * 根据id查询菜品和关联的口味数据，一次关联查询完成
+     * @param id
+     * @return
+     */
+    DishVO getByIdWithFlavor(Long id);
+
     /**
      * 根据主键删除菜品数据
      * @param id
@@ -61,6 +76,13 @@ public interface DishMapper {
     @AutoFill(OperationType.UPDATE)
     void update(Dish dish);
 
+    /**
+     * 根据菜品id集合查询所属的分类id
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 根据分类id查询菜品列表
      * @param dish
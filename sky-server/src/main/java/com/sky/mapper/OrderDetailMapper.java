@@ -22,4 +22,11 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id = #{id}")
     List<OrderDetail> getByOrderId(Long id);
+
+    /**
+     * 根据订单id批量查询订单详情
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
 }
@@ -3,8 +3,10 @@ package com.sky.mapper;
 import com.github.pagehelper.Page;
 import com.sky.dto.GoodsSalesDTO;
 import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.entity.DailyBusinessData;
 import com.sky.entity.DailyTurnover;
 import com.sky.entity.Orders;
+import com.sky.entity.StatusCount;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
@@ -64,8 +66,34 @@ public interface OrderMapper {
     @Select("select count(*) from orders where status = #{status}")
     Integer getStatus(Integer status);
 
-    @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
-    List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
+    /**
+     * 按状态分组统计订单数量，一次查询得到所有状态
+     *
+     * @param begin 下单时间下限，为空则不限
+     * @return
+     */
+    List<StatusCount> countGroupByStatus(LocalDateTime begin);
+
+    /**
+     * 将处于指定状态且下单时间早于orderTime的订单批量修改为orders中的状态，每次最多修改limit条
+     * @param status
+     * @param orderTime
+     * @param orders 修改后的状态，以及取消原因、取消时间、送达时间（不为空时修改）
+     * @param limit
+     * @return 修改的行数
+     */
+    int updateStatusByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime, Orders orders, int limit);
+
+    /**
+     * 批量取消订单，只修改仍处于指定状态的订单
+     * @param ids
+     * @param fromStatus
+     * @param cancelStatus
+     * @param cancelReason
+     * @param cancelTime
+     * @return 实际取消的订单数
+     */
+    int cancelByIds(List<Long> ids, Integer fromStatus, Integer cancelStatus, String cancelReason, LocalDateTime cancelTime);
 
     /**
      * 日期区间营业额统计
@@ -77,6 +105,16 @@ public interface OrderMapper {
      */
     List<DailyTurnover> sum(LocalDate begin, LocalDate end, Integer status);
 
+    /**
+     * 日期区间每日营业数据统计，一次查询得到营业额、订单总数和有效订单数
+     *
+     * @param begin
+     * @param end
+     * @param validStatus
+     * @return
+     */
+    List<DailyBusinessData> businessDataGroupByDate(LocalDate begin, LocalDate end, Integer validStatus);
+
     /**
      * 日期区间营业额统计(map)
      *
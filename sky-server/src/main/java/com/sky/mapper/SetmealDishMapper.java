@@ -35,4 +35,11 @@ public interface SetmealDishMapper {
      */
     @Select("select * from setmeal_dish where setmeal_id = #{setmealId}")
     List<SetmealDish> getDishesBySetmealId(Long setmealId);
+
+    /**
+     * 查询所有套餐和菜品的关联关系
+     * @return
+     */
+    @Select("select * from setmeal_dish order by setmeal_id, id")
+    List<SetmealDish> list();
 }
@@ -6,11 +6,11 @@ import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.entity.Setmeal;
 import com.sky.enumeration.OperationType;
-import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -46,12 +46,26 @@ public interface SetmealMapper {
     @Select("select * from setmeal where id = #{id}")
     Setmeal getById(Long id);
 
+    /**
+     * 根据id集合批量查询套餐
+     * @param ids
+     * @return
+     */
+    List<Setmeal> getByIds(Collection<Long> ids);
+
     /**
      * 删除套餐
      * @param ids
      */
     void deleteByIds(List<Long> ids);
 
+    /**
+     * 根据套餐id集合查询所属的分类id
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 套餐分页查询
      * @param setmealPageQueryDTO
@@ -66,16 +80,6 @@ public interface SetmealMapper {
      */
     List<Setmeal> list(Setmeal setmeal);
 
-    /**
-     * 根据套餐id查询菜品选项
-     * @param setmealId
-     * @return
-     */
-    @Select("select sd.name, sd.copies, d.image, d.description " +
-            "from setmeal_dish sd left join dish d on sd.dish_id = d.id " +
-            "where sd.setmeal_id = #{setmealId}")
-    List<DishItemVO> getDishItemBySetmealId(Long setmealId);
-
     /**
      * 根据条件统计套餐数量
      * @param map
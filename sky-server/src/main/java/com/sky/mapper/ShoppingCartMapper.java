@@ -4,6 +4,7 @@ import com.sky.entity.ShoppingCart;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
 
 import java.util.List;
@@ -20,36 +21,62 @@ public interface ShoppingCartMapper {
     List<ShoppingCart> list(ShoppingCart shoppingCart);
 
     /**
-     * 更新购物车单品数量
+     * 商品数量加一
      *
-     * @param shoppingCart
+     * @param userId
+     * @param itemKey
+     * @return 更新的行数，为0说明购物车中没有该商品
      */
-    @Update("update shopping_cart set number = #{number} where id = #{id}")
-    void updateNumById(ShoppingCart shoppingCart);
+    @Update("update shopping_cart set number = number + 1 where user_id = #{userId} and item_key = #{itemKey}")
+    int incrementNumber(Long userId, String itemKey);
 
     /**
-     * 插入购物车数据
+     * 插入购物车数据，已存在（并发加入同一商品）时数量累加
      *
      * @param shoppingCart
      */
-    @Insert("insert into shopping_cart (name, image, user_id, dish_id, setmeal_id, dish_flavor, number, amount, create_time) " +
+    @Insert("insert into shopping_cart (name, image, user_id, dish_id, setmeal_id, dish_flavor, item_key, number, amount, create_time) " +
             "VALUES" +
-            "(#{name}, #{image}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, #{number}, #{amount}, #{createTime})")
-    void insert(ShoppingCart shoppingCart);
+            "(#{name}, #{image}, #{userId}, #{dishId}, #{setmealId}, #{dishFlavor}, #{itemKey}, #{number}, #{amount}, #{createTime}) " +
+            "on duplicate key update number = number + values(number)")
+    void upsert(ShoppingCart shoppingCart);
 
     /**
-     * 根据用户id清空购物车
+     * 商品数量大于1时数量减一
+     *
      * @param userId
+     * @param itemKey
+     * @return 更新的行数，为0说明商品不存在或数量为1
      */
-    @Delete("delete from shopping_cart where user_id = #{userId}")
-    void deleteByUserId(Long userId);
+    @Update("update shopping_cart set number = number - 1 where user_id = #{userId} and item_key = #{itemKey} and number > 1")
+    int decrementNumber(Long userId, String itemKey);
+
+    /**
+     * 商品数量为1时删除
+     *
+     * @param userId
+     * @param itemKey
+     * @return 删除的行数，为0说明商品不存在或数量已大于1
+     */
+    @Delete("delete from shopping_cart where user_id = #{userId} and item_key = #{itemKey} and number <= 1")
+    int deleteLastOne(Long userId, String itemKey);
+
+    /**
+     * 查询商品数量
+     *
+     * @param userId
+     * @param itemKey
+     * @return 商品不存在时返回null
+     */
+    @Select("select number from shopping_cart where user_id = #{userId} and item_key = #{itemKey}")
+    Integer getNumber(Long userId, String itemKey);
 
     /**
-     * 根据购物车id删除单品
-     * @param id
+     * 根据用户id清空购物车
+     * @param userId
      */
-    @Delete("delete from shopping_cart where id = #{id}")
-    void deleteByCartId(Long id);
+    @Delete("delete from shopping_cart where user_id = #{userId}")
+    void deleteByUserId(Long userId);
 
     /**
      * 批量插入购物车
@@ -0,0 +1,21 @@
+package com.sky.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface TaskFenceMapper {
+
+    /**
+     * 租约第一次使用时插入token记录，已存在时忽略
+     * @param name
+     */
+    void init(String name);
+
+    /**
+     * token不小于已记录的token时更新，并对记录加锁直到事务结束
+     * @param name
+     * @param token
+     * @return 0表示已有更大的token写入过数据
+     */
+    int advance(String name, long token);
+}
@@ -1,9 +1,12 @@
 package com.sky.mapper;
 
+import com.sky.entity.DailyCount;
 import com.sky.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 @Mapper
@@ -33,4 +36,12 @@ public interface UserMapper {
      */
     Integer countByMap(Map map);
 
+    /**
+     * 按注册日期分组统计时间区间内的新增用户数量
+     * @param begin
+     * @param end
+     * @return
+     */
+    List<DailyCount> countGroupByDate(LocalDateTime begin, LocalDateTime end);
+
 }
@@ -0,0 +1,32 @@
+package com.sky.service;
+
+import com.sky.entity.AddressBook;
+
+public interface DeliveryRangeService {
+
+    /**
+     * 拼接完整收货地址
+     * @param addressBook
+     * @return
+     */
+    String getFullAddress(AddressBook addressBook);
+
+    /**
+     * 查询收货地址到店铺的配送距离，优先读取缓存
+     * @param address 完整收货地址
+     * @return 距离，单位米
+     */
+    Integer getDistance(String address);
+
+    /**
+     * 计算收货地址到店铺的配送距离并记录到地址簿，同时记录当前店铺坐标，计算失败时清空
+     * @param addressBook
+     */
+    void fillDistance(AddressBook addressBook);
+
+    /**
+     * 检测收货地址是否超出配送范围，地址簿中保存的距离基于当前店铺坐标时不再调用地图接口
+     * @param addressBook
+     */
+    void checkOutOfRange(AddressBook addressBook);
+}
@@ -0,0 +1,19 @@
+package com.sky.service;
+
+import com.sky.cache.MenuSnapshot;
+import com.sky.vo.MenuVO;
+
+public interface MenuService {
+
+    /**
+     * 查询C端完整菜单
+     * @return
+     */
+    MenuVO getMenu();
+
+    /**
+     * 获取C端完整菜单的快照，菜单有修改时重新生成
+     * @return
+     */
+    MenuSnapshot getMenuSnapshot();
+}
@@ -0,0 +1,24 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+
+public interface OrderTimeoutService {
+
+    /**
+     * 登记待支付订单的超时取消时间
+     * @param orders
+     */
+    void schedule(Orders orders);
+
+    /**
+     * 订单已支付或已取消，不再需要超时取消
+     * @param orderId
+     */
+    void remove(Long orderId);
+
+    /**
+     * 取消已到期的待支付订单
+     * @return 本次处理的到期订单数
+     */
+    int cancelDueOrders();
+}
@@ -45,7 +45,9 @@ public interface ReportService {
 
     /**
      * 导出运营数据报表
+     * @param begin 为空时默认导出最近30天
+     * @param end
      * @param response
      */
-    void exportBusinessData(HttpServletResponse response) throws IOException;
+    void exportBusinessData(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException;
 }
@@ -1,10 +1,14 @@
 package com.sky.service;
 
+import com.sky.entity.DailyBusinessData;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 
 public interface WorkspaceService {
 
@@ -16,6 +20,29 @@ public interface WorkspaceService {
      */
     BusinessDataVO getBusinessData(LocalDateTime begin, LocalDateTime end);
 
+    /**
+     * 按天统计日期区间内的营业数据，已封存的日期读取汇总表，其余日期查询原始数据
+     * @param begin
+     * @param end
+     * @return 区间内每天一条，按日期排序
+     */
+    List<DailyBusinessData> getDailyBusinessData(LocalDate begin, LocalDate end);
+
+    /**
+     * 按天统计日期区间内的营业数据，直接查询原始订单和用户数据
+     * @param begin
+     * @param end
+     * @return 区间内每天一条，按日期排序
+     */
+    List<DailyBusinessData> getRawDailyBusinessData(LocalDate begin, LocalDate end);
+
+    /**
+     * 按天统计给定日期的营业数据，直接查询原始订单和用户数据，连续的日期合并为一次区间查询
+     * @param dates
+     * @return 每个日期一条，按日期排序
+     */
+    List<DailyBusinessData> getRawDailyBusinessData(Collection<LocalDate> dates);
+
     /**
      * 查询订单管理数据
      * @return
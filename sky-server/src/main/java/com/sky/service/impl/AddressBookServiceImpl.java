@@ -4,7 +4,9 @@ import com.sky.context.BaseContext;
 import com.sky.entity.AddressBook;
 import com.sky.mapper.AddressBookMapper;
 import com.sky.service.AddressBookService;
+import com.sky.service.DeliveryRangeService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,6 +17,8 @@ import java.util.List;
 public class AddressBookServiceImpl implements AddressBookService {
     @Autowired
     private AddressBookMapper addressBookMapper;
+    @Autowired
+    private DeliveryRangeService deliveryRangeService;
 
     /**
      * 条件查询
@@ -34,6 +38,7 @@ public class AddressBookServiceImpl implements AddressBookService {
     public void save(AddressBook addressBook) {
         addressBook.setUserId(BaseContext.getCurrentId());
         addressBook.setIsDefault(0);
+        deliveryRangeService.fillDistance(addressBook);
         addressBookMapper.insert(addressBook);
     }
 
@@ -54,6 +59,28 @@ public class AddressBookServiceImpl implements AddressBookService {
      * @param addressBook
      */
     public void update(AddressBook addressBook) {
+        // 修改了省市区或详细地址时重新计算配送距离，未传的部分沿用原值
+        if (addressBook.getProvinceName() != null || addressBook.getCityName() != null
+                || addressBook.getDistrictName() != null || addressBook.getDetail() != null) {
+            AddressBook addressBookDB = addressBookMapper.getById(addressBook.getId());
+            AddressBook merged = new AddressBook();
+            BeanUtils.copyProperties(addressBookDB, merged);
+            if (addressBook.getProvinceName() != null) {
+                merged.setProvinceName(addressBook.getProvinceName());
+            }
+            if (addressBook.getCityName() != null) {
+                merged.setCityName(addressBook.getCityName());
+            }
+            if (addressBook.getDistrictName() != null) {
+                merged.setDistrictName(addressBook.getDistrictName());
+            }
+            if (addressBook.getDetail() != null) {
+                merged.setDetail(addressBook.getDetail());
+            }
+            deliveryRangeService.fillDistance(merged);
+            addressBook.setDistance(merged.getDistance());
+            addressBook.setDistanceOrigin(merged.getDistanceOrigin());
+        }
         addressBookMapper.update(addressBook);
     }
 
@@ -70,8 +97,11 @@ public class AddressBookServiceImpl implements AddressBookService {
         addressBookMapper.updateIsDefaultByUserId(addressBook);
 
         //2、将当前地址改为默认地址 update address_book set is_default = ? where id = ?
-        addressBook.setIsDefault(1);
-        addressBookMapper.update(addressBook);
+        // 只修改默认标记，请求中附带的地址字段不应触发距离重算
+        addressBookMapper.update(AddressBook.builder()
+                .id(addressBook.getId())
+                .isDefault(1)
+                .build());
     }
 
     /**
@@ -0,0 +1,180 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.AddressBook;
+import com.sky.exception.BaseException;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.DeliveryProperties;
+import com.sky.service.DeliveryRangeService;
+import com.sky.utils.HttpClientUtil;
+import com.sky.utils.LruCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Service
+@Slf4j
+public class DeliveryRangeServiceImpl implements DeliveryRangeService {
+
+    public static final String GEOCODING = "https://api.map.baidu.com/geocoding/v3";
+    public static final String DIRECTION_LITE = "https://api.map.baidu.com/directionlite/v1/driving";
+    private static final String DISTANCE_KEY_PREFIX = "delivery_distance_";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private DeliveryProperties deliveryProperties;
+    @Value("${sky.shop.shop-coordinate}")
+    private String shopCoordinate;
+    @Value("${sky.baidu.ak}")
+    private String ak;
+
+    // 归一化地址 -> 配送距离
+    private LruCache<String, Integer> distanceCache;
+
+    @PostConstruct
+    public void init() {
+        distanceCache = new LruCache<>(deliveryProperties.getCacheSize(), deliveryProperties.getCacheTtl());
+    }
+
+    /**
+     * 拼接完整收货地址
+     *
+     * @param addressBook
+     * @return
+     */
+    public String getFullAddress(AddressBook addressBook) {
+        return addressBook.getProvinceName() + addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail();
+    }
+
+    /**
+     * 查询收货地址到店铺的配送距离，依次查询本地缓存、redis、百度地图
+     *
+     * @param address
+     * @return
+     */
+    public Integer getDistance(String address) {
+        String key = normalize(address);
+
+        Integer distance = distanceCache.get(key);
+        if (distance != null) {
+            return distance;
+        }
+
+        // redis中的距离可能跨越重启，key中带上店铺坐标，店铺搬迁后旧数据自然失效
+        String redisKey = DISTANCE_KEY_PREFIX + shopCoordinate + "_" + key;
+        if (deliveryProperties.isRedisEnabled()) {
+            distance = (Integer) redisTemplate.opsForValue().get(redisKey);
+            if (distance != null) {
+                distanceCache.put(key, distance);
+                return distance;
+            }
+        }
+
+        distance = requestDistance(address);
+        distanceCache.put(key, distance);
+        if (deliveryProperties.isRedisEnabled()) {
+            redisTemplate.opsForValue().set(redisKey, distance, deliveryProperties.getCacheTtl(), TimeUnit.MILLISECONDS);
+        }
+        return distance;
+    }
+
+    /**
+     * 计算收货地址到店铺的配送距离并记录到地址簿，解析失败时清空，下单时再重新计算
+     *
+     * @param addressBook
+     */
+    public void fillDistance(AddressBook addressBook) {
+        try {
+            addressBook.setDistance(getDistance(getFullAddress(addressBook)));
+            addressBook.setDistanceOrigin(shopCoordinate);
+        } catch (BaseException e) {
+            log.warn("计算配送距离失败：{}", e.getMessage());
+            addressBook.setDistance(null);
+            addressBook.setDistanceOrigin(null);
+        }
+    }
+
+    /**
+     * 检测用户收货地址是否超出范围
+     *
+     * @param addressBook
+     */
+    public void checkOutOfRange(AddressBook addressBook) {
+        // 地址簿中的距离按保存时的店铺坐标计算，坐标变更后重新计算
+        Integer distance = shopCoordinate.equals(addressBook.getDistanceOrigin()) ? addressBook.getDistance() : null;
+        if (distance == null) {
+            String address = getFullAddress(addressBook);
+            log.info("检查是否超出配送范围：{}", address);
+            distance = getDistance(address);
+        }
+        log.info("距离：{}", distance);
+
+        if (distance > deliveryProperties.getMaxDistance()) {
+            throw new OrderBusinessException(MessageConstant.OUT_OF_DELIVERY_RANGE);
+        }
+    }
+
+    /**
+     * 地址归一化，去掉所有空白字符，作为缓存key
+     *
+     * @param address
+     * @return
+     */
+    private String normalize(String address) {
+        return address.replaceAll("[\\s\\u3000]+", "");
+    }
+
+    /**
+     * 调用百度地图解析地址并规划路线，获取路线总长度
+     *
+     * @param address 详细收货地址
+     * @return
+     */
+    private Integer requestDistance(String address) {
+
+        Map<String, String> map = new HashMap<>();
+        map.put("output", "json");
+        map.put("ak", ak);
+
+        // 解析用户地址
+        map.put("address", address);
+        String userCoordinateJson = HttpClientUtil.doGet(GEOCODING, map);
+
+        JSONObject jsonObject = JSON.parseObject(userCoordinateJson);
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            log.error(userCoordinateJson);
+            throw new OrderBusinessException(MessageConstant.USER_ADDRESS_DECODE_FAILED);
+        }
+
+        JSONObject result = jsonObject.getJSONObject("result").getJSONObject("location");
+
+        String userLatLng = result.getString("lat") + "," + result.getString("lng");
+
+        // 路线规划，获取路线总长度
+        map.put("origin", shopCoordinate);
+        map.put("destination", userLatLng);
+        map.put("steps_info", "0");
+        log.info("路线规划：origin：{}，destination：{}", shopCoordinate, userLatLng);
+
+        String planJson = HttpClientUtil.doGet(DIRECTION_LITE, map);
+        jsonObject = JSON.parseObject(planJson);
+        if (jsonObject == null || !"0".equals(jsonObject.getString("status"))) {
+            log.error(planJson);
+            throw new OrderBusinessException(MessageConstant.DELIVERY_ROUTE_PLAN_FAILED);
+        }
+        result = jsonObject.getJSONObject("result");
+        JSONArray routesArr = (JSONArray) result.get("routes");
+        return ((JSONObject) routesArr.get(0)).getInteger("distance");
+    }
+}
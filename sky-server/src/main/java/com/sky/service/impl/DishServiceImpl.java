@@ -26,6 +26,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -132,13 +133,8 @@ public class DishServiceImpl implements DishService {
     @Override
     public DishVO getByIdWithFlavor(Long id) {
 
-        Dish dish = dishMapper.getById(id);
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
-        DishVO dishVO = new DishVO();
-        BeanUtils.copyProperties(dish, dishVO);
-        dishVO.setFlavors(dishFlavors);
-
-        return dishVO;
+        // 菜品和口味通过关联查询一次查出
+        return dishMapper.getByIdWithFlavor(id);
     }
 
     /**
@@ -214,16 +210,21 @@ public class DishServiceImpl implements DishService {
     public List<DishVO> listWithFlavor(Dish dish) {
         List<Dish> dishList = dishMapper.list(dish);
 
-        List<DishVO> dishVOList = new ArrayList<>();
+        List<DishVO> dishVOList = new ArrayList<>(dishList.size());
+        if (dishList.isEmpty()) {
+            return dishVOList;
+        }
+
+        //一次查询出所有菜品的口味，再按菜品id分组
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds)
+                .stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
 
@@ -0,0 +1,106 @@
+package com.sky.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.cache.MenuCacheManager;
+import com.sky.cache.MenuSnapshot;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.Result;
+import com.sky.service.CategoryService;
+import com.sky.service.DishService;
+import com.sky.service.MenuService;
+import com.sky.service.SetmealService;
+import com.sky.vo.DishVO;
+import com.sky.vo.MenuVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@Slf4j
+public class MenuServiceImpl implements MenuService {
+
+    // 与接口返回使用相同的日期格式
+    private final ObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private DishService dishService;
+    @Autowired
+    private SetmealService setmealService;
+    @Autowired
+    private MenuCacheManager menuCacheManager;
+
+    /**
+     * 查询C端完整菜单
+     *
+     * @return
+     */
+    @Override
+    public MenuVO getMenu() {
+        List<Category> categoryList = categoryService.list(null);
+        Set<Long> categoryIds = categoryList.stream().map(Category::getId).collect(Collectors.toSet());
+
+        // 所有起售中的菜品和套餐各查询一次，只保留启用分类下的
+        Dish dish = Dish.builder().status(StatusConstant.ENABLE).build();
+        List<DishVO> dishList = dishService.listWithFlavor(dish)
+                .stream()
+                .filter(d -> categoryIds.contains(d.getCategoryId()))
+                .collect(Collectors.toList());
+
+        Setmeal setmeal = Setmeal.builder().status(StatusConstant.ENABLE).build();
+        List<Setmeal> setmealList = setmealService.list(setmeal)
+                .stream()
+                .filter(s -> categoryIds.contains(s.getCategoryId()))
+                .collect(Collectors.toList());
+
+        return MenuVO.builder()
+                .categoryList(categoryList)
+                .dishList(dishList)
+                .setmealList(setmealList)
+                .build();
+    }
+
+    /**
+     * 获取C端完整菜单的快照，菜单有修改时重新生成
+     *
+     * @return
+     */
+    @Override
+    public MenuSnapshot getMenuSnapshot() {
+        return menuCacheManager.getMenuSnapshot(this::buildMenuSnapshot);
+    }
+
+    private MenuSnapshot buildMenuSnapshot() {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(Result.success(getMenu()));
+            // 以内容摘要作为ETag，内容不变则ETag不变
+            String etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(json);
+            }
+            log.info("生成菜单快照：{}，原始大小：{}，压缩后：{}", etag, json.length, out.size());
+            return new MenuSnapshot(etag, json, out.toByteArray());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,11 +1,12 @@
 package com.sky.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cart.CartStore;
 import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.*;
 import com.sky.entity.*;
@@ -13,9 +14,12 @@ import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.*;
+import com.sky.properties.PricingProperties;
 import com.sky.result.PageResult;
+import com.sky.service.DeliveryRangeService;
 import com.sky.service.OrderService;
-import com.sky.utils.HttpClientUtil;
+import com.sky.service.OrderTimeoutService;
+import com.sky.utils.SnowflakeIdGenerator;
 import com.sky.utils.WeChatPayUtil;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
@@ -25,10 +29,10 @@ import com.sky.websocket.WebSocketServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,9 +41,6 @@ import java.util.stream.Collectors;
 @Slf4j
 public class OrderServiceImpl implements OrderService {
 
-    public static final String GEOCODING = "https://api.map.baidu.com/geocoding/v3";
-    public static final String DIRECTION_LITE = "https://api.map.baidu.com/directionlite/v1/driving";
-
     @Autowired
     private OrderMapper orderMapper;
     @Autowired
@@ -47,19 +48,29 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private CartStore cartStore;
     @Autowired
     private UserMapper userMapper;
     @Autowired
     private WebSocketServer webSocketServer;
     @Autowired
     private WeChatPayUtil weChatPayUtil;
-    @Value("${sky.shop.address}")
-    private String shopAddress;
-    @Value("${sky.shop.shop-coordinate}")
-    private String shopCoordinate;
-    @Value("${sky.baidu.ak}")
-    private String ak;
+    @Autowired
+    private DeliveryRangeService deliveryRangeService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private DishMapper dishMapper;
+    @Autowired
+    private SetmealMapper setmealMapper;
+    @Autowired
+    private PricingProperties pricingProperties;
+    @Autowired
+    private SnowflakeIdGenerator orderNumberGenerator;
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
 
 
     /**
@@ -69,7 +80,6 @@ public class OrderServiceImpl implements OrderService {
      * @return
      */
     @Override
-    @Transactional
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
 
         // 处理业务异常（地址簿为空，购物车数据为空）
@@ -78,18 +88,35 @@ public class OrderServiceImpl implements OrderService {
             throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
         }
 
-        String address = addressBook.getProvinceName() + addressBook.getCityName() + addressBook.getDistrictName() + addressBook.getDetail();
+        // 检查是否超出配送范围，可能调用地图接口，放在事务之外避免长时间占用数据库连接
+        deliveryRangeService.checkOutOfRange(addressBook);
 
-        // 检查是否超出配送范围
-        log.info("检查是否超出配送范围：{}", address);
-        checkOutOfRange(address);
+        // 写库部分在事务中执行
+        OrderSubmitVO orderSubmitVO = transactionTemplate.execute(status -> saveOrder(ordersSubmitDTO, addressBook));
+
+        // 提交后登记超时取消
+        orderTimeoutService.schedule(Orders.builder()
+                .id(orderSubmitVO.getId())
+                .orderTime(orderSubmitVO.getOrderTime())
+                .build());
+        return orderSubmitVO;
+    }
+
+    /**
+     * 保存订单和订单明细并清空购物车
+     *
+     * @param ordersSubmitDTO
+     * @param addressBook
+     * @return
+     */
+    private OrderSubmitVO saveOrder(OrdersSubmitDTO ordersSubmitDTO, AddressBook addressBook) {
+
+        String address = deliveryRangeService.getFullAddress(addressBook);
 
         // 查询当前用户购物车数据
         Long userId = BaseContext.getCurrentId();
 
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        List<ShoppingCart> list = cartStore.list(userId);
         if (list == null || list.isEmpty()) {
             throw new ShoppingCartBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
         }
@@ -100,28 +127,34 @@ public class OrderServiceImpl implements OrderService {
                 .address(address)
                 .payStatus(Orders.UN_PAID)
                 .status(Orders.PENDING_PAYMENT)
-                .number(String.valueOf(System.currentTimeMillis()))
+                .number(String.valueOf(nextOrderNumber()))
                 .phone(addressBook.getPhone())
                 .consignee(addressBook.getConsignee())
                 .userId(userId)
                 .userName(userMapper.getById(userId).getName())
 //                .deliveryStatus(ordersSubmitDTO.getDeliveryStatus())  // 前端就没传过来值
                 .build();
-        BeanUtils.copyProperties(ordersSubmitDTO, orders);
+        // 打包费由服务端计算；客户端未传餐具数量时按 0 处理，避免 null 拷贝到基本类型字段
+        BeanUtils.copyProperties(ordersSubmitDTO, orders, "packAmount", "tablewareNumber");
+        Integer tablewareNumber = ordersSubmitDTO.getTablewareNumber();
+        orders.setTablewareNumber(tablewareNumber == null ? 0 : tablewareNumber);
+
+        // 按当前商品价格计算订单金额和明细，不使用客户端提交的金额
+        List<OrderDetail> orderDetailList = priceOrder(list, orders);
+        if (ordersSubmitDTO.getAmount() == null || ordersSubmitDTO.getAmount().compareTo(orders.getAmount()) != 0) {
+            log.warn("订单金额与客户端提交的不一致，用户id：{}，客户端：{}，服务端：{}",
+                    userId, ordersSubmitDTO.getAmount(), orders.getAmount());
+        }
         orderMapper.insert(orders);
 
-        List<OrderDetail> orderDetailList = new ArrayList<>();
         // 向订单明细表插入n条数据
-        for (ShoppingCart cart : list) {
-            OrderDetail orderDetail = new OrderDetail();
-            BeanUtils.copyProperties(cart, orderDetail);
+        for (OrderDetail orderDetail : orderDetailList) {
             orderDetail.setOrderId(orders.getId()); // 订单id（插入订单返回的主键值）
-            orderDetailList.add(orderDetail);
         }
         orderDetailMapper.insertBatch(orderDetailList);
 
         // 清空用户购物车数据
-        shoppingCartMapper.deleteByUserId(userId);
+        cartStore.clear(userId);
 
         // 返回VO结果
         return OrderSubmitVO.builder()
@@ -132,6 +165,94 @@ public class OrderServiceImpl implements OrderService {
                 .build();
     }
 
+    /**
+     * 生成订单号，workerId租约失效期间不能生成
+     *
+     * @return
+     */
+    private long nextOrderNumber() {
+        try {
+            return orderNumberGenerator.nextId();
+        } catch (IllegalStateException e) {
+            log.error("订单号生成失败", e);
+            throw new OrderBusinessException(MessageConstant.ORDER_NUMBER_UNAVAILABLE);
+        }
+    }
+
+    /**
+     * 根据购物车和数据库中商品的当前价格生成订单明细，并计算订单的打包费和总金额
+     * 总金额 = 商品金额 + 打包费 + 配送费 + 餐具费
+     * 价格和起售状态直接查询数据库（菜品、套餐各一次批量查询），不使用可能滞后的商品快照
+     *
+     * @param cartList
+     * @param orders
+     * @return
+     */
+    private List<OrderDetail> priceOrder(List<ShoppingCart> cartList, Orders orders) {
+        Set<Long> dishIds = new HashSet<>();
+        Set<Long> setmealIds = new HashSet<>();
+        for (ShoppingCart cart : cartList) {
+            if (cart.getDishId() != null) {
+                dishIds.add(cart.getDishId());
+            } else {
+                setmealIds.add(cart.getSetmealId());
+            }
+        }
+        Map<Long, Dish> dishMap = dishIds.isEmpty() ? Collections.emptyMap() : dishMapper.getByIds(dishIds)
+                .stream()
+                .collect(Collectors.toMap(Dish::getId, dish -> dish));
+        Map<Long, Setmeal> setmealMap = setmealIds.isEmpty() ? Collections.emptyMap() : setmealMapper.getByIds(setmealIds)
+                .stream()
+                .collect(Collectors.toMap(Setmeal::getId, setmeal -> setmeal));
+
+        List<OrderDetail> orderDetailList = new ArrayList<>(cartList.size());
+        BigDecimal goodsAmount = BigDecimal.ZERO;
+        int itemCount = 0;
+
+        for (ShoppingCart cart : cartList) {
+            OrderDetail orderDetail = new OrderDetail();
+            BeanUtils.copyProperties(cart, orderDetail, "id");
+
+            // 商品已删除或停售时不能下单
+            if (cart.getDishId() != null) {
+                Dish dish = dishMap.get(cart.getDishId());
+                if (dish == null || !StatusConstant.ENABLE.equals(dish.getStatus())) {
+                    throw new OrderBusinessException(MessageConstant.CART_ITEM_UNAVAILABLE);
+                }
+                orderDetail.setName(dish.getName());
+                orderDetail.setImage(dish.getImage());
+                orderDetail.setAmount(dish.getPrice());
+            } else {
+                Setmeal setmeal = setmealMap.get(cart.getSetmealId());
+                if (setmeal == null || !StatusConstant.ENABLE.equals(setmeal.getStatus())) {
+                    throw new OrderBusinessException(MessageConstant.CART_ITEM_UNAVAILABLE);
+                }
+                orderDetail.setName(setmeal.getName());
+                orderDetail.setImage(setmeal.getImage());
+                orderDetail.setAmount(setmeal.getPrice());
+            }
+
+            int number = cart.getNumber();
+            goodsAmount = goodsAmount.add(orderDetail.getAmount().multiply(BigDecimal.valueOf(number)));
+            itemCount += number;
+            orderDetailList.add(orderDetail);
+        }
+
+        // 餐具按餐量提供时，数量与商品份数相同
+        int tablewareNumber = Integer.valueOf(1).equals(orders.getTablewareStatus()) ? itemCount : orders.getTablewareNumber();
+        int packAmount = itemCount * pricingProperties.getPackFee();
+
+        BigDecimal amount = goodsAmount
+                .add(BigDecimal.valueOf(packAmount))
+                .add(pricingProperties.getDeliveryFee())
+                .add(pricingProperties.getTablewareFee().multiply(BigDecimal.valueOf(tablewareNumber)));
+
+        orders.setTablewareNumber(tablewareNumber);
+        orders.setPackAmount(packAmount);
+        orders.setAmount(amount);
+        return orderDetailList;
+    }
+
     /**
      * 订单支付
      *
@@ -187,7 +308,8 @@ public class OrderServiceImpl implements OrderService {
                 .checkoutTime(LocalDateTime.now())
                 .build();
 
-        orderMapper.update(orders);
+        updateStatus(orders);
+        orderTimeoutService.remove(ordersDB.getId());
 
         // 通过websocket向客户端浏览器推送消息
         Map<String, Object> map = new HashMap<>();
@@ -220,9 +342,11 @@ public class OrderServiceImpl implements OrderService {
         List<OrderVO> voList = new ArrayList<>();
 
         if (page != null && !page.isEmpty()) {
+            // 一次查出本页所有订单的明细，再按订单id分组，避免逐条查询
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(page);
             for (Orders orders : page) {
 
-                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+                List<OrderDetail> orderDetailList = orderDetailMap.getOrDefault(orders.getId(), Collections.emptyList());
                 OrderVO vo = new OrderVO();
                 BeanUtils.copyProperties(orders, vo);
                 vo.setOrderDetailList(orderDetailList); // vo中的orderDishes不知道有啥用，也没赋值
@@ -285,7 +409,7 @@ public class OrderServiceImpl implements OrderService {
         orders.setStatus(Orders.CANCELLED);
         orders.setCancelReason("用户取消");
         orders.setCancelTime(LocalDateTime.now());
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -308,7 +432,7 @@ public class OrderServiceImpl implements OrderService {
             shoppingCartList.add(shoppingCart);
         }
 
-        shoppingCartMapper.insertBatch(shoppingCartList);
+        cartStore.addBatch(shoppingCartList);
 
     }
 
@@ -326,11 +450,12 @@ public class OrderServiceImpl implements OrderService {
         List<OrderVO> orderVOList = new ArrayList<>();
 
         if (page != null && !page.isEmpty()) {
+            Map<Long, List<OrderDetail>> orderDetailMap = getOrderDetailMap(page);
             for (Orders orders : page) {
                 OrderVO orderVO = new OrderVO();
                 BeanUtils.copyProperties(orders, orderVO);
                 // 还有菜品字符串
-                orderVO.setOrderDishes(getDishStr(orders));
+                orderVO.setOrderDishes(getDishStr(orderDetailMap.getOrDefault(orders.getId(), Collections.emptyList())));
                 orderVOList.add(orderVO);
             }
         }
@@ -344,14 +469,15 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public OrderStatisticsVO statistics() {
-        Integer toBeConfirmed = orderMapper.getStatus(Orders.TO_BE_CONFIRMED);
-        Integer confirmed = orderMapper.getStatus(Orders.CONFIRMED);
-        Integer deliveryInProgress = orderMapper.getStatus(Orders.DELIVERY_IN_PROGRESS);
+        // 一次分组查询得到所有状态的数量
+        Map<Integer, Integer> statusCountMap = orderMapper.countGroupByStatus(null)
+                .stream()
+                .collect(Collectors.toMap(StatusCount::getStatus, StatusCount::getCount));
 
         return OrderStatisticsVO.builder()
-                .toBeConfirmed(toBeConfirmed)
-                .confirmed(confirmed)
-                .deliveryInProgress(deliveryInProgress)
+                .toBeConfirmed(statusCountMap.getOrDefault(Orders.TO_BE_CONFIRMED, 0))
+                .confirmed(statusCountMap.getOrDefault(Orders.CONFIRMED, 0))
+                .deliveryInProgress(statusCountMap.getOrDefault(Orders.DELIVERY_IN_PROGRESS, 0))
                 .build();
     }
 
@@ -366,7 +492,7 @@ public class OrderServiceImpl implements OrderService {
                 .id(ordersDTO.getId())
                 .status(Orders.CONFIRMED)
                 .build();
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -398,7 +524,7 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
 
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -422,7 +548,7 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .cancelReason(ordersCancelDTO.getCancelReason())
                 .build();
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -441,7 +567,7 @@ public class OrderServiceImpl implements OrderService {
                 .id(id)
                 .status(Orders.DELIVERY_IN_PROGRESS)
                 .build();
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -461,7 +587,7 @@ public class OrderServiceImpl implements OrderService {
                 .status(Orders.COMPLETED)
                 .deliveryTime(LocalDateTime.now())
                 .build();
-        orderMapper.update(orders);
+        updateStatus(orders);
     }
 
     /**
@@ -486,85 +612,44 @@ public class OrderServiceImpl implements OrderService {
     }
 
     /**
-     * 获取订单详情中所有菜品并拼接
+     * 修改订单状态，同一事务中把下单日期的营业数据汇总标记为未封存，由封存任务重新统计
      *
      * @param orders
+     */
+    private void updateStatus(Orders orders) {
+        transactionTemplate.executeWithoutResult(status -> {
+            orderMapper.update(orders);
+            dailyBusinessStatsMapper.unsealByOrderIds(Collections.singletonList(orders.getId()));
+        });
+    }
+
+    /**
+     * 批量查询订单明细并按订单id分组
+     *
+     * @param ordersList
      * @return
      */
-    private String getDishStr(Orders orders) {
-        List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
-        return orderDetailList
+    private Map<Long, List<OrderDetail>> getOrderDetailMap(List<Orders> ordersList) {
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        return orderDetailMapper.getByOrderIds(orderIds)
                 .stream()
-                .map(dish -> dish.getName() + "*" + dish.getNumber())
-                .collect(Collectors.joining(";\n"));
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
     }
 
     /**
-     * 检测用户收货地址是否超出范围
+     * 拼接订单明细中的所有菜品
      *
-     * @param address 详细收货地址
+     * @param orderDetailList 该订单的明细
+     * @return
      */
-    private void checkOutOfRange(String address) {
-
-        Map<String, String> map = new HashMap<>();
-        map.put("output", "json");
-        map.put("ak", ak);
-
-/*
-        // 解析店铺地址
-        map.put("address", shopAddress);
-        String shopCoordinate = HttpClientUtil.doGet(GEOCODING, map);
-
-        JSONObject jsonObject = JSON.parseObject(shopCoordinate);
-        if (!jsonObject.getString("status").equals("0")) {
-            throw new OrderBusinessException(MessageConstant.SHOP_ADDRESS_DECODE_FAILED);
-        }
-
-        JSONObject location = jsonObject.getJSONObject("result").getJSONObject("location");
-        String lat = location.getString("lat");
-        String lng = location.getString("lng");
-        String shopLngLat = lng + "," + lat;
-*/
-
-        // 解析用户地址
-        map.put("address", address);
-        String userCoordinateJson = HttpClientUtil.doGet(GEOCODING, map);
-
-        JSONObject jsonObject = JSON.parseObject(userCoordinateJson);
-        if (!jsonObject.getString("status").equals("0")) {
-            log.error(userCoordinateJson);
-            throw new OrderBusinessException(MessageConstant.USER_ADDRESS_DECODE_FAILED);
-        }
-
-        JSONObject result = jsonObject.getJSONObject("result").getJSONObject("location");
-
-        String userLatLng = result.getString("lat") + "," + result.getString("lng");
-
-//        double lat = Double.parseDouble(result.getString("lat"));
-//        double lng = Double.parseDouble(result.getString("lng"));
-//        String formattedLat = String.format("%.6f", lat);
-//        String formattedLng = String.format("%.6f", lng);
-//        String formattedUserLatLng = formattedLat + "," + formattedLng;
-
-        // 路线规划，获取路线总长度
-        map.put("origin", shopCoordinate);
-        map.put("destination", userLatLng);
-        map.put("steps_info", "0");
-        log.info("路线规划：origin：{}，destination：{}", shopCoordinate, userLatLng);
-
-        String planJson = HttpClientUtil.doGet(DIRECTION_LITE, map);
-        jsonObject = JSON.parseObject(planJson);
-        if (!jsonObject.getString("status").equals("0")) {
-            log.error(planJson);
-            throw new OrderBusinessException(MessageConstant.DELIVERY_ROUTE_PLAN_FAILED);
-        }
-        result = jsonObject.getJSONObject("result");
-        JSONArray routesArr = (JSONArray) result.get("routes");
-        Integer distance = (Integer) ((JSONObject) routesArr.get(0)).get("distance");
-        log.info("距离：{}", distance);
-
-        if (distance > 10000) {
-            throw new OrderBusinessException(MessageConstant.OUT_OF_DELIVERY_RANGE);
+    private String getDishStr(List<OrderDetail> orderDetailList) {
+        StringBuilder sb = new StringBuilder();
+        for (OrderDetail orderDetail : orderDetailList) {
+            if (sb.length() > 0) {
+                sb.append(";\n");
+            }
+            sb.append(orderDetail.getName()).append('*').append(orderDetail.getNumber());
         }
+        return sb.toString();
     }
 }
@@ -0,0 +1,113 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.service.OrderTimeoutService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 待支付订单超时取消
+ * 订单id按到期时间保存在redis有序集合中，各节点定时领取到期的订单
+ * 领取时不删除，而是把到期时间推后一个领取超时时间，其他节点在此期间不会重复领取；订单取消成功后才删除，
+ * 节点在取消前宕机时订单会在领取超时后重新被领取
+ */
+@Service
+@Slf4j
+public class OrderTimeoutServiceImpl implements OrderTimeoutService {
+
+    private static final String TIMEOUT_KEY = "order_timeout";
+
+    // 领取到期的订单id，并把到期时间推后到领取超时  KEYS: 有序集合  ARGV: 当前时间, 最多领取的数量, 领取超时的时间
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "for _, id in ipairs(ids) do redis.call('ZADD', KEYS[1], 'XX', ARGV[3], id) end " +
+            "return ids", List.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private OrderMapper orderMapper;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+
+    /**
+     * 登记待支付订单的超时取消时间
+     *
+     * @param orders
+     */
+    @Override
+    public void schedule(Orders orders) {
+        LocalDateTime expireTime = orders.getOrderTime().plusMinutes(orderTimeoutProperties.getTimeout());
+        long score = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try {
+            stringRedisTemplate.opsForZSet().add(TIMEOUT_KEY, String.valueOf(orders.getId()), score);
+        } catch (Exception e) {
+            // 登记失败由兜底的定时任务取消
+            log.error("登记订单超时取消失败，订单id：{}", orders.getId(), e);
+        }
+    }
+
+    /**
+     * 订单已支付或已取消，不再需要超时取消
+     *
+     * @param orderId
+     */
+    @Override
+    public void remove(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(TIMEOUT_KEY, String.valueOf(orderId));
+    }
+
+    /**
+     * 取消已到期的待支付订单
+     *
+     * @return 本次处理的到期订单数
+     */
+    @Override
+    public int cancelDueOrders() {
+        long now = System.currentTimeMillis();
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(TIMEOUT_KEY),
+                String.valueOf(now), String.valueOf(orderTimeoutProperties.getBatchSize()),
+                String.valueOf(now + orderTimeoutProperties.getClaimTimeout()));
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        List<Long> ids = claimed.stream().map(Long::valueOf).collect(Collectors.toList());
+        try {
+            // 只取消仍处于待付款状态的订单，已支付的订单不受影响
+            int count = transactionTemplate.execute(status -> {
+                int cancelled = orderMapper.cancelByIds(ids, Orders.PENDING_PAYMENT, Orders.CANCELLED,
+                        MessageConstant.ORDER_PAYMENT_TIMEOUT, LocalDateTime.now());
+                dailyBusinessStatsMapper.unsealByOrderIds(ids);
+                return cancelled;
+            });
+            log.info("取消超时订单：{}，实际取消：{}", ids, count);
+        } catch (Exception e) {
+            // 未删除的订单在领取超时后会被重新领取
+            log.error("取消超时订单失败：{}", ids, e);
+            return 0;
+        }
+        // 状态已提交后再删除
+        stringRedisTemplate.opsForZSet().remove(TIMEOUT_KEY, claimed.toArray());
+        return ids.size();
+    }
+}
@@ -1,15 +1,22 @@
 package com.sky.service.impl;
 
+import com.sky.constant.MessageConstant;
 import com.sky.dto.GoodsSalesDTO;
-import com.sky.entity.DailyTurnover;
-import com.sky.entity.Orders;
+import com.sky.entity.DailyBusinessData;
+import com.sky.exception.ReportBusinessException;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.service.ReportService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.xssf.streaming.SXSSFRow;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -23,6 +30,7 @@ import java.io.InputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -30,6 +38,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ReportServiceImpl implements ReportService {
 
+    // 模板中明细数据的起始行和最后一列
+    private static final int DETAIL_FIRST_ROW = 7;
+    private static final int DETAIL_LAST_CELL = 6;
 
     @Autowired
     private OrderMapper orderMapper;
@@ -37,6 +48,8 @@ public class ReportServiceImpl implements ReportService {
     private UserMapper userMapper;
     @Autowired
     private WorkspaceService workspaceService;
+    @Autowired
+    private ReportProperties reportProperties;
 
     /**
      * 统计指定时间区间内的营业额数据
@@ -48,27 +61,11 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public TurnoverReportVO getTurnOverStatistics(LocalDate begin, LocalDate end) {
 
-        // date， turnover
-        List<DailyTurnover> dailyTurnovers = orderMapper.sum(begin, end, Orders.COMPLETED);
-
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (begin.isBefore(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
+        // 每日营业数据，已按日期排序且没有数据的日期已补0
+        List<DailyBusinessData> dailyDataList = workspaceService.getDailyBusinessData(begin, end);
 
-        // 用得到的日期范围列表创建日期营业额映射表，初始值0
-        Map<LocalDate, Double> turnoverMap = new TreeMap<>(dateList // map实现用treemap，保证值按日期顺序排序
-                .stream()
-                .collect(Collectors.toMap(date -> date, date -> 0.0)));
-
-        // 遍历查询结果，如果有数据则更新映射
-        dailyTurnovers.forEach(dt -> {
-            turnoverMap.put(dt.getDate(), dt.getTurnover());
-        });
-
-        List<Double> turnoverList = new ArrayList<>(turnoverMap.values());
+        List<LocalDate> dateList = dailyDataList.stream().map(DailyBusinessData::getDate).collect(Collectors.toList());
+        List<Double> turnoverList = dailyDataList.stream().map(DailyBusinessData::getTurnover).collect(Collectors.toList());
 
         return TurnoverReportVO
                 .builder()
@@ -87,30 +84,26 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
 
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (begin.isBefore(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
-
-
-        List<Integer> newUserList = new ArrayList<>();
-        List<Integer> totalUserList = new ArrayList<>();
-
-        dateList.forEach(date -> {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            Map map = new HashMap<>();
-            map.put("end", endTime);
-            Integer totalUser = userMapper.countByMap(map);
-            map.put("begin", beginTime);
-            Integer newUser = userMapper.countByMap(map);
-
+        // 区间开始之前的用户总数作为基数
+        Map map = new HashMap<>();
+        map.put("end", LocalDateTime.of(begin, LocalTime.MIN));
+        Integer baseUser = userMapper.countByMap(map);
+
+        // 区间内每天的新增用户数
+        List<DailyBusinessData> dailyDataList = workspaceService.getDailyBusinessData(begin, end);
+
+        List<LocalDate> dateList = new ArrayList<>(dailyDataList.size());
+        List<Integer> newUserList = new ArrayList<>(dailyDataList.size());
+        List<Integer> totalUserList = new ArrayList<>(dailyDataList.size());
+
+        // 前缀和得到每天的用户总量
+        int totalUser = baseUser == null ? 0 : baseUser;
+        for (DailyBusinessData data : dailyDataList) {
+            totalUser += data.getNewUsers();
+            dateList.add(data.getDate());
+            newUserList.add(data.getNewUsers());
             totalUserList.add(totalUser);
-            newUserList.add(newUser);
-        });
+        }
 
         return UserReportVO.builder()
                 .dateList(StringUtils.join(dateList, ","))
@@ -129,27 +122,17 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
 
-        List<LocalDate> dateList = new ArrayList<>();
-        dateList.add(begin);
-        while (begin.isBefore(end)) {
-            begin = begin.plusDays(1);
-            dateList.add(begin);
-        }
-
+        // 每日营业数据，已按日期排序且没有数据的日期已补0
+        List<DailyBusinessData> dailyDataList = workspaceService.getDailyBusinessData(begin, end);
 
-        List<Integer> totalOrderCountList = new ArrayList<>();
-        List<Integer> validOrderCountList = new ArrayList<>();
+        List<LocalDate> dateList = new ArrayList<>(dailyDataList.size());
+        List<Integer> totalOrderCountList = new ArrayList<>(dailyDataList.size());
+        List<Integer> validOrderCountList = new ArrayList<>(dailyDataList.size());
 
-        dateList.forEach(date -> {
-            LocalDateTime beginTime = LocalDateTime.of(date, LocalTime.MIN);
-            LocalDateTime endTime = LocalDateTime.of(date, LocalTime.MAX);
-
-            // 每天的订单数据
-            Integer totalOrderCount = getOrderCount(beginTime, endTime, null);
-            Integer validOrderCount = getOrderCount(beginTime, endTime, Orders.COMPLETED);
-
-            totalOrderCountList.add(totalOrderCount);
-            validOrderCountList.add(validOrderCount);
+        dailyDataList.forEach(data -> {
+            dateList.add(data.getDate());
+            totalOrderCountList.add(data.getTotalOrderCount());
+            validOrderCountList.add(data.getValidOrderCount());
         });
 
         // 时间段内总的订单数据
@@ -206,67 +189,106 @@ public class ReportServiceImpl implements ReportService {
     /**
      * 导出运营数据报表
      *
+     * @param begin
+     * @param end
      * @param response
      */
     @Override
-    public void exportBusinessData(HttpServletResponse response) throws IOException {
-
-        // 查询数据库获取营业数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-
-        BusinessDataVO businessDataVO = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN), LocalDateTime.of(dateEnd, LocalTime.MAX));
+    public void exportBusinessData(LocalDate begin, LocalDate end, HttpServletResponse response) throws IOException {
+
+        // 确定导出区间，默认最近30天（不含今天）
+        LocalDate dateEnd = end != null ? end : LocalDate.now().minusDays(1);
+        LocalDate dateBegin = begin != null ? begin : dateEnd.minusDays(reportProperties.getExportDefaultDays() - 1);
+        if (dateBegin.isAfter(dateEnd)
+                || ChronoUnit.DAYS.between(dateBegin, dateEnd) >= reportProperties.getExportMaxDays()) {
+            throw new ReportBusinessException(MessageConstant.EXPORT_RANGE_ERROR);
+        }
 
-        // 通过POI将数据写入excel文件中
+        // 区间内每天的营业数据，已封存的日期读取汇总表
+        List<DailyBusinessData> dailyDataList = workspaceService.getDailyBusinessData(dateBegin, dateEnd);
+
+        // 由每日数据汇总得到区间概览
+        double turnover = 0.0;
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (DailyBusinessData data : dailyDataList) {
+            turnover += data.getTurnover();
+            totalOrderCount += data.getTotalOrderCount();
+            validOrderCount += data.getValidOrderCount();
+            newUsers += data.getNewUsers();
+        }
 
         InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/运营数据报表模板.xlsx");
-        XSSFWorkbook excel = new XSSFWorkbook(in);
+        XSSFWorkbook template = new XSSFWorkbook(in);
+        in.close();
 
-        // 填充数据
-        XSSFSheet sheet = excel.getSheetAt(0);
+        // 概览部分直接写在模板上
+        XSSFSheet templateSheet = template.getSheetAt(0);
         // 时间
-        sheet.getRow(1).getCell(1).setCellValue("时间：" + dateBegin + "至" + dateEnd);
-
-        XSSFRow row = sheet.getRow(3);
-        row.getCell(2).setCellValue(businessDataVO.getTurnover());  // 营业额
-        row.getCell(4).setCellValue(businessDataVO.getOrderCompletionRate());  // 订单完成率
-        row.getCell(6).setCellValue(businessDataVO.getNewUsers());  // 新增用户
-
-        row = sheet.getRow(4);
-        row.getCell(2).setCellValue(businessDataVO.getValidOrderCount());  // 有效订单数
-        row.getCell(4).setCellValue(businessDataVO.getUnitPrice());  // 平均客单价
-
-        // 填充明细数据
-        for (int i = 0; i < 30; i++) {
-            LocalDate date = dateBegin.plusDays(i);
-            // 查询某一天的营业数据
-            BusinessDataVO data = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-            row = sheet.getRow(7 + i);
-            row.getCell(1).setCellValue(date.toString());
-            row.getCell(2).setCellValue(data.getTurnover());
-            row.getCell(3).setCellValue(data.getValidOrderCount());
-            row.getCell(4).setCellValue(data.getOrderCompletionRate());
-            row.getCell(5).setCellValue(data.getUnitPrice());
-            row.getCell(6).setCellValue(data.getNewUsers());
+        templateSheet.getRow(1).getCell(1).setCellValue("时间：" + dateBegin + "至" + dateEnd);
+
+        XSSFRow row = templateSheet.getRow(3);
+        row.getCell(2).setCellValue(turnover);  // 营业额
+        row.getCell(4).setCellValue(getCompletionRate(validOrderCount, totalOrderCount));  // 订单完成率
+        row.getCell(6).setCellValue(newUsers);  // 新增用户
+
+        row = templateSheet.getRow(4);
+        row.getCell(2).setCellValue(validOrderCount);  // 有效订单数
+        row.getCell(4).setCellValue(getUnitPrice(turnover, validOrderCount));  // 平均客单价
+
+        // 记下明细行样式后移除模板中的明细占位行，明细改为流式追加，行数不受模板限制
+        XSSFRow styleRow = templateSheet.getRow(DETAIL_FIRST_ROW);
+        short rowHeight = styleRow.getHeight();
+        CellStyle[] cellStyles = new CellStyle[DETAIL_LAST_CELL + 1];
+        for (int c = 1; c <= DETAIL_LAST_CELL; c++) {
+            cellStyles[c] = styleRow.getCell(c).getCellStyle();
+        }
+        for (int r = templateSheet.getLastRowNum(); r >= DETAIL_FIRST_ROW; r--) {
+            XSSFRow templateRow = templateSheet.getRow(r);
+            if (templateRow != null) {
+                templateSheet.removeRow(templateRow);
+            }
         }
 
-        // 通过输出流讲excel文件下载到客户端浏览器
-        ServletOutputStream out = response.getOutputStream();
-        excel.write(out);
-
-        // 关闭资源
-        excel.close();
-        in.close();
-        out.close();
+        // SXSSF只在内存中保留有限行数，导出一整年也不会占用大量堆内存
+        SXSSFWorkbook excel = new SXSSFWorkbook(template, reportProperties.getExportRowWindow());
+        try {
+            SXSSFSheet sheet = excel.getSheetAt(0);
+            int rowIndex = DETAIL_FIRST_ROW;
+            for (DailyBusinessData data : dailyDataList) {
+                SXSSFRow detailRow = sheet.createRow(rowIndex++);
+                detailRow.setHeight(rowHeight);
+                setCell(detailRow, 1, cellStyles).setCellValue(data.getDate().toString());
+                setCell(detailRow, 2, cellStyles).setCellValue(data.getTurnover());
+                setCell(detailRow, 3, cellStyles).setCellValue(data.getValidOrderCount());
+                setCell(detailRow, 4, cellStyles).setCellValue(getCompletionRate(data.getValidOrderCount(), data.getTotalOrderCount()));
+                setCell(detailRow, 5, cellStyles).setCellValue(getUnitPrice(data.getTurnover(), data.getValidOrderCount()));
+                setCell(detailRow, 6, cellStyles).setCellValue(data.getNewUsers());
+            }
+
+            // 通过输出流讲excel文件下载到客户端浏览器
+            ServletOutputStream out = response.getOutputStream();
+            excel.write(out);
+            out.close();
+        } finally {
+            // 关闭资源，删除流式写入产生的临时文件
+            excel.dispose();
+            excel.close();
+        }
+    }
 
+    private Cell setCell(SXSSFRow row, int column, CellStyle[] cellStyles) {
+        Cell cell = row.createCell(column);
+        cell.setCellStyle(cellStyles[column]);
+        return cell;
     }
 
+    private double getCompletionRate(int validOrderCount, int totalOrderCount) {
+        return totalOrderCount == 0 ? 0.0 : (double) validOrderCount / totalOrderCount;
+    }
 
-    private Integer getOrderCount(LocalDateTime begin, LocalDateTime end, Integer status) {
-        Map map = new HashMap<>();
-        map.put("end", end);
-        map.put("begin", begin);
-        map.put("status", status);
-        return orderMapper.countByMap(map);
+    private double getUnitPrice(double turnover, int validOrderCount) {
+        return validOrderCount == 0 ? 0.0 : turnover / validOrderCount;
     }
 }
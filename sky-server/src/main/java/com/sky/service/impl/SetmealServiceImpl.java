@@ -2,6 +2,7 @@ package com.sky.service.impl;
 
 import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.sky.cache.ProductSnapshotCache;
 import com.sky.constant.MessageConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.dto.SetmealDTO;
@@ -39,6 +40,9 @@ public class SetmealServiceImpl implements SetmealService {
     @Autowired
     private DishMapper dishMapper;
 
+    @Autowired
+    private ProductSnapshotCache productSnapshotCache;
+
     /**
      * 批量保存套餐以及和菜品的关联关系
      *
@@ -185,7 +189,8 @@ public class SetmealServiceImpl implements SetmealService {
      * @return
      */
     public List<DishItemVO> getDishItemById(Long id) {
-        return setmealMapper.getDishItemBySetmealId(id);
+        // C端查看套餐详情，从商品快照读取
+        return productSnapshotCache.getDishItems(id);
     }
 
 }
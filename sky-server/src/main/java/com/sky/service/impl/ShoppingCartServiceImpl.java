@@ -1,5 +1,7 @@
 package com.sky.service.impl;
 
+import com.sky.cache.ProductSnapshotCache;
+import com.sky.cart.CartStore;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -7,14 +9,12 @@ import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
-import com.sky.mapper.ShoppingCartMapper;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 @Service
@@ -22,11 +22,13 @@ import java.util.List;
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
     @Autowired
-    ShoppingCartMapper shoppingCartMapper;
+    CartStore cartStore;
     @Autowired
     DishMapper dishMapper;
     @Autowired
     SetmealMapper setmealMapper;
+    @Autowired
+    ProductSnapshotCache productSnapshotCache;
 
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
@@ -36,39 +38,31 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
 
-        // 判断当前加入购物车的商品是否已经存在
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-
-        // 已经存在，数量加一
-        if (list != null && !list.isEmpty()) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber() + 1);
-            shoppingCartMapper.updateNumById(cart);
-        }
-
-        // 不存在，插入购物车数据
-        else {
-
+        // 已经存在则数量加一，不存在时补充商品信息后插入，商品信息优先从内存快照读取
+        cartStore.add(shoppingCart, cart -> {
             // 判断是菜品还是套餐
             Long dishId = shoppingCartDTO.getDishId();
             Long setmealId = shoppingCartDTO.getSetmealId();
             if (dishId != null) {
                 // 是菜品
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
+                Dish dish = productSnapshotCache.getDish(dishId);
+                if (dish == null) {
+                    dish = dishMapper.getById(dishId);
+                }
+                cart.setName(dish.getName());
+                cart.setImage(dish.getImage());
+                cart.setAmount(dish.getPrice());
             } else {
                 // 是套餐
-                Setmeal setmeal = setmealMapper.getById(setmealId);
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
+                Setmeal setmeal = productSnapshotCache.getSetmeal(setmealId);
+                if (setmeal == null) {
+                    setmeal = setmealMapper.getById(setmealId);
+                }
+                cart.setName(setmeal.getName());
+                cart.setImage(setmeal.getImage());
+                cart.setAmount(setmeal.getPrice());
             }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
-        }
+        });
     }
 
     /**
@@ -79,11 +73,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Override
     public List<ShoppingCart> showShoppingCart() {
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return cartStore.list(userId);
     }
 
     /**
@@ -92,7 +82,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Override
     public void cleanShoppingCart() {
         Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.deleteByUserId(userId);
+        cartStore.clear(userId);
     }
 
     /**
@@ -108,17 +98,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
         Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
 
-        // 判断当前加入购物车的商品是否已经存在
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        if (list != null && !list.isEmpty()) {
-            ShoppingCart cart = list.get(0);
-
-            if (cart.getNumber() > 1) {
-                cart.setNumber(cart.getNumber() - 1);
-                shoppingCartMapper.updateNumById(cart);
-            } else {
-                shoppingCartMapper.deleteByCartId(cart.getId());
-            }
-        }
+        // 数量减一，减到0时删除
+        cartStore.sub(shoppingCart);
     }
 }
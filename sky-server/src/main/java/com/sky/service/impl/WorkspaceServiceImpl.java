@@ -1,7 +1,11 @@
 package com.sky.service.impl;
 
 import com.sky.constant.StatusConstant;
+import com.sky.entity.DailyBusinessData;
+import com.sky.entity.DailyCount;
 import com.sky.entity.Orders;
+import com.sky.entity.StatusCount;
+import com.sky.mapper.DailyBusinessStatsMapper;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
 import com.sky.mapper.SetmealMapper;
@@ -14,10 +18,11 @@ import com.sky.vo.SetmealOverViewVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -31,6 +36,8 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
 
     /**
      * 根据时间段统计营业数据
@@ -47,6 +54,11 @@ public class WorkspaceServiceImpl implements WorkspaceService {
          * 新增用户：当日新增用户的数量
          */
 
+        // 整天的区间按天汇总，已封存的日期直接读取汇总表
+        if (begin.toLocalTime().equals(LocalTime.MIN) && end.toLocalTime().equals(LocalTime.MAX)) {
+            return sumBusinessData(getDailyBusinessData(begin.toLocalDate(), end.toLocalDate()));
+        }
+
         Map map = new HashMap();
         map.put("begin",begin);
         map.put("end",end);
@@ -86,40 +98,146 @@ public class WorkspaceServiceImpl implements WorkspaceService {
 
 
     /**
-     * 查询订单管理数据
+     * 按天统计日期区间内的营业数据，已封存的日期读取汇总表，其余日期查询原始数据
      *
+     * @param begin
+     * @param end
      * @return
      */
-    public OrderOverViewVO getOrderOverView() {
-        Map map = new HashMap();
-        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
-        map.put("status", Orders.TO_BE_CONFIRMED);
+    public List<DailyBusinessData> getDailyBusinessData(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyBusinessData> sealedMap = dailyBusinessStatsMapper.getSealedByDateRange(begin, end)
+                .stream()
+                .collect(Collectors.toMap(DailyBusinessData::getDate, data -> data));
 
-        //待接单
-        Integer waitingOrders = orderMapper.countByMap(map);
+        // 只对没有封存数据的日期（通常只有当天）查询原始数据
+        List<LocalDate> rawDates = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            if (!sealedMap.containsKey(date)) {
+                rawDates.add(date);
+            }
+        }
+        Map<LocalDate, DailyBusinessData> rawMap = getRawDailyBusinessData(rawDates)
+                .stream()
+                .collect(Collectors.toMap(DailyBusinessData::getDate, data -> data));
 
-        //待派送
-        map.put("status", Orders.CONFIRMED);
-        Integer deliveredOrders = orderMapper.countByMap(map);
+        List<DailyBusinessData> dailyDataList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessData data = sealedMap.get(date);
+            dailyDataList.add(data != null ? data : rawMap.get(date));
+        }
+        return dailyDataList;
+    }
 
-        //已完成
-        map.put("status", Orders.COMPLETED);
-        Integer completedOrders = orderMapper.countByMap(map);
+    /**
+     * 按天统计日期区间内的营业数据，直接查询原始订单和用户数据，没有数据的日期补0
+     *
+     * @param begin
+     * @param end
+     * @return
+     */
+    public List<DailyBusinessData> getRawDailyBusinessData(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyBusinessData> orderDataMap = orderMapper.businessDataGroupByDate(begin, end, Orders.COMPLETED)
+                .stream()
+                .collect(Collectors.toMap(DailyBusinessData::getDate, data -> data));
+        Map<LocalDate, Integer> newUserMap = userMapper.countGroupByDate(LocalDateTime.of(begin, LocalTime.MIN), LocalDateTime.of(end, LocalTime.MAX))
+                .stream()
+                .collect(Collectors.toMap(DailyCount::getDate, DailyCount::getCount));
+
+        List<DailyBusinessData> dailyDataList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyBusinessData orderData = orderDataMap.get(date);
+            dailyDataList.add(DailyBusinessData.builder()
+                    .date(date)
+                    .turnover(orderData == null ? 0.0 : orderData.getTurnover())
+                    .totalOrderCount(orderData == null ? 0 : orderData.getTotalOrderCount())
+                    .validOrderCount(orderData == null ? 0 : orderData.getValidOrderCount())
+                    .newUsers(newUserMap.getOrDefault(date, 0))
+                    .build());
+        }
+        return dailyDataList;
+    }
 
-        //已取消
-        map.put("status", Orders.CANCELLED);
-        Integer cancelledOrders = orderMapper.countByMap(map);
+    /**
+     * 按天统计给定日期的营业数据，连续的日期合并为一次区间查询，避免中间缺少一天时扫描整个区间
+     *
+     * @param dates
+     * @return
+     */
+    public List<DailyBusinessData> getRawDailyBusinessData(Collection<LocalDate> dates) {
+        List<DailyBusinessData> dailyDataList = new ArrayList<>();
+        LocalDate runBegin = null;
+        LocalDate runEnd = null;
+        for (LocalDate date : new TreeSet<>(dates)) {
+            if (runEnd != null && !date.equals(runEnd.plusDays(1))) {
+                dailyDataList.addAll(getRawDailyBusinessData(runBegin, runEnd));
+                runBegin = null;
+            }
+            if (runBegin == null) {
+                runBegin = date;
+            }
+            runEnd = date;
+        }
+        if (runBegin != null) {
+            dailyDataList.addAll(getRawDailyBusinessData(runBegin, runEnd));
+        }
+        return dailyDataList;
+    }
 
-        //全部订单
-        map.put("status", null);
-        Integer allOrders = orderMapper.countByMap(map);
+    /**
+     * 将每日营业数据汇总为区间营业数据
+     *
+     * @param dailyDataList
+     * @return
+     */
+    private BusinessDataVO sumBusinessData(List<DailyBusinessData> dailyDataList) {
+        double turnover = 0.0;
+        int totalOrderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (DailyBusinessData data : dailyDataList) {
+            turnover += data.getTurnover();
+            totalOrderCount += data.getTotalOrderCount();
+            validOrderCount += data.getValidOrderCount();
+            newUsers += data.getNewUsers();
+        }
+
+        Double unitPrice = 0.0;
+        Double orderCompletionRate = 0.0;
+        if (totalOrderCount != 0 && validOrderCount != 0) {
+            orderCompletionRate = (double) validOrderCount / totalOrderCount;
+            unitPrice = turnover / validOrderCount;
+        }
+
+        return BusinessDataVO.builder()
+                .turnover(turnover)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
+    }
+
+    /**
+     * 查询订单管理数据
+     *
+     * @return
+     */
+    public OrderOverViewVO getOrderOverView() {
+        // 今日订单按状态分组统计，一次查询代替逐个状态count
+        List<StatusCount> statusCounts = orderMapper.countGroupByStatus(LocalDateTime.now().with(LocalTime.MIN));
+        Map<Integer, Integer> statusCountMap = new HashMap<>();
+        int allOrders = 0;
+        for (StatusCount statusCount : statusCounts) {
+            statusCountMap.put(statusCount.getStatus(), statusCount.getCount());
+            allOrders += statusCount.getCount();
+        }
 
         return OrderOverViewVO.builder()
-                .waitingOrders(waitingOrders)
-                .deliveredOrders(deliveredOrders)
-                .completedOrders(completedOrders)
-                .cancelledOrders(cancelledOrders)
-                .allOrders(allOrders)
+                .waitingOrders(statusCountMap.getOrDefault(Orders.TO_BE_CONFIRMED, 0))      //待接单
+                .deliveredOrders(statusCountMap.getOrDefault(Orders.CONFIRMED, 0))          //待派送
+                .completedOrders(statusCountMap.getOrDefault(Orders.COMPLETED, 0))          //已完成
+                .cancelledOrders(statusCountMap.getOrDefault(Orders.CANCELLED, 0))          //已取消
+                .allOrders(allOrders)                                                        //全部订单
                 .build();
     }
 
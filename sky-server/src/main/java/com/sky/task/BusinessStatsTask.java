@@ -0,0 +1,69 @@
+package com.sky.task;
+
+import com.sky.annotation.TaskLease;
+import com.sky.entity.DailyBusinessData;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.service.WorkspaceService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 每日营业数据汇总定时任务
+ * 当天的数据由读取方直接查询当天的原始订单，这里只负责封存已经结束的日期
+ * 过去日期的订单状态变化时（取消、拒单、退款、完成等），该日期会被标记为未封存，由本任务重新封存
+ */
+@Component
+@Slf4j
+public class BusinessStatsTask {
+
+    // 每次查询原始数据最多处理的天数
+    private static final int SEAL_BATCH_DAYS = 31;
+    // 应用与数据库的时钟误差余量，查询原始数据前这段时间内被标记为未封存的日期本次不封存
+    private static final long SEAL_CLOCK_MARGIN_SECONDS = 60;
+
+    @Autowired
+    private WorkspaceService workspaceService;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private ReportProperties reportProperties;
+
+    /**
+     * 封存过去的日期，在处理派送中订单的任务之后执行，保证前一天的订单状态已经确定
+     * 同时重新封存被标记为未封存的日期，并补齐回溯范围内缺少汇总数据的日期，例如上线之前的日期
+     */
+    @Scheduled(cron = "0 30 1 * * ?")    // 每天凌晨一点半
+    @TaskLease(value = "businessStatsTask.sealPastDays", leaseTime = 30 * 60 * 1000L, minHold = 5 * 60 * 1000L)
+    public void sealPastDays() {
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(reportProperties.getStatsBackfillDays() - 1);
+        Set<LocalDate> sealedDates = new HashSet<>(dailyBusinessStatsMapper.getSealedDates(begin, end));
+
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            if (!sealedDates.contains(date)) {
+                dates.add(date);
+            }
+        }
+        log.info("封存营业数据汇总：{}天，{} ~ {}", dates.size(), begin, end);
+
+        for (int i = 0; i < dates.size(); i += SEAL_BATCH_DAYS) {
+            List<LocalDate> batch = dates.subList(i, Math.min(i + SEAL_BATCH_DAYS, dates.size()));
+            // 查询期间订单状态又发生变化的日期保持未封存
+            LocalDateTime readTime = LocalDateTime.now().minusSeconds(SEAL_CLOCK_MARGIN_SECONDS);
+            for (DailyBusinessData data : workspaceService.getRawDailyBusinessData(batch)) {
+                dailyBusinessStatsMapper.save(data, true, readTime);
+            }
+        }
+    }
+}
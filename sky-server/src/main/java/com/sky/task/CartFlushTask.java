@@ -0,0 +1,28 @@
+package com.sky.task;
+
+import com.sky.annotation.TaskLease;
+import com.sky.cart.RedisCartStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * redis购物车定时写回mysql
+ */
+@Component
+@ConditionalOnProperty(prefix = "sky.cart", name = "store", havingValue = "redis")
+public class CartFlushTask {
+
+    @Autowired
+    private RedisCartStore redisCartStore;
+
+    /**
+     * 写回有修改的购物车
+     */
+    @Scheduled(fixedDelayString = "${sky.cart.flush-delay:5000}")
+    @TaskLease(value = "cartFlushTask.flush", leaseTime = 60 * 1000L)
+    public void flush() {
+        redisCartStore.flush();
+    }
+}
@@ -1,15 +1,22 @@
 package com.sky.task;
 
+import com.sky.annotation.TaskLease;
 import com.sky.constant.MessageConstant;
 import com.sky.entity.Orders;
+import com.sky.lock.Lease;
+import com.sky.lock.LeaseContext;
+import com.sky.lock.LeaseFence;
+import com.sky.mapper.DailyBusinessStatsMapper;
 import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.service.OrderTimeoutService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * 定时任务类
@@ -18,44 +25,96 @@ import java.util.List;
 @Slf4j
 public class OrderTask {
 
+    // 批量修改订单状态时每批的行数
+    private static final int UPDATE_CHUNK_SIZE = 500;
+
     @Autowired
     private OrderMapper orderMapper;
+    @Autowired
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+    @Autowired
+    private LeaseFence leaseFence;
 
     /**
-     * 处理超时订单
+     * 取消到期的待支付订单，到期时间在下单时登记
+     * 各节点都可以执行，同一订单只会被一个节点领取
      */
-    @Scheduled(cron = "0 * * * * ?")    // 每分钟
+    @Scheduled(fixedDelayString = "${sky.order-timeout.poll-interval:500}")
+    public void cancelDueOrders(){
+        // 一次取出的数量有上限，取满时继续处理
+        int count;
+        do {
+            count = orderTimeoutService.cancelDueOrders();
+        } while (count >= orderTimeoutProperties.getBatchSize());
+    }
+
+    /**
+     * 兜底处理超时订单，处理登记失败（如redis不可用）的订单
+     */
+    @Scheduled(cron = "0 0/30 * * * ?")    // 每半小时
+    @TaskLease(value = "orderTask.processTimeoutOrder", leaseTime = 10 * 60 * 1000L, minHold = 5 * 60 * 1000L)
     public void processTimeoutOrder(){
         LocalDateTime now = LocalDateTime.now();
         log.info("处理超时订单：{}", now);
-        LocalDateTime time = now.minusMinutes(15);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, time);
-
-        if(ordersList != null && !ordersList.isEmpty()){
-            ordersList.forEach(orders -> {
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason(MessageConstant.ORDER_PAYMENT_TIMEOUT);
-                orders.setCancelTime(now);
-                orderMapper.update(orders);
-            });
-        }
+        LocalDateTime time = now.minusMinutes(orderTimeoutProperties.getTimeout());
+
+        Orders orders = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason(MessageConstant.ORDER_PAYMENT_TIMEOUT)
+                .cancelTime(now)
+                .build();
+        int count = updateInChunks(Orders.PENDING_PAYMENT, time, orders);
+        log.info("取消超时订单数：{}", count);
     }
 
     /**
      * 处理一直处于派送中的订单
      */
     @Scheduled(cron = "0 0 1 * * ?")    // 每天凌晨一点
+    @TaskLease(value = "orderTask.processDeliveryOrder", leaseTime = 10 * 60 * 1000L, minHold = 5 * 60 * 1000L)
     public void processDeliveryOrder(){
         LocalDateTime now = LocalDateTime.now();
         log.info("处理一直处于派送中的订单：{}", now);
         LocalDateTime time = now.minusHours(1);
-        List<Orders> ordersList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, time);
-        if(ordersList != null && !ordersList.isEmpty()){
-            ordersList.forEach(orders -> {
-                orders.setStatus(Orders.COMPLETED);
-                orders.setDeliveryTime(now);
-                orderMapper.update(orders);
-            });
-        }
+
+        Orders orders = Orders.builder()
+                .status(Orders.COMPLETED)
+                .deliveryTime(now)
+                .build();
+        int count = updateInChunks(Orders.DELIVERY_IN_PROGRESS, time, orders);
+        log.info("完成派送中订单数：{}", count);
+    }
+
+    /**
+     * 分批修改订单状态，每批单独提交，不加载订单数据
+     * 每批在数据库中校验租约token，租约已过期并被其他节点获取时停止
+     *
+     * @param status
+     * @param orderTime
+     * @param orders
+     * @return 修改的总行数
+     */
+    private int updateInChunks(Integer status, LocalDateTime orderTime, Orders orders) {
+        Lease lease = LeaseContext.getCurrentLease();
+        Supplier<Integer> update = () -> {
+            // 涉及日期的营业数据汇总标记为未封存，由封存任务重新统计
+            dailyBusinessStatsMapper.unsealByStatusAndOrderTimeLT(status, orderTime);
+            return orderMapper.updateStatusByStatusAndOrderTimeLT(status, orderTime, orders, UPDATE_CHUNK_SIZE);
+        };
+        int total = 0;
+        Integer count;
+        do {
+            count = lease == null ? update.get() : leaseFence.execute(lease, update);
+            if (count == null) {
+                log.warn("任务租约已被其他节点获取，停止修改订单：{}", lease);
+                break;
+            }
+            total += count;
+        } while (count == UPDATE_CHUNK_SIZE);
+        return total;
     }
 }
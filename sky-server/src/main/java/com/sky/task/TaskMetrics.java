@@ -0,0 +1,84 @@
+package com.sky.task;
+
+import com.sky.vo.TaskMetricsVO;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 定时任务的租约获取和执行耗时统计（本节点）
+ */
+@Component
+public class TaskMetrics {
+
+    private final ConcurrentHashMap<String, Stats> statsMap = new ConcurrentHashMap<>();
+
+    public void recordAcquired(String name, long token) {
+        Stats stats = getStats(name);
+        stats.acquired.increment();
+        stats.lastToken.set(token);
+    }
+
+    public void recordSkipped(String name) {
+        getStats(name).skipped.increment();
+    }
+
+    public void recordError(String name) {
+        getStats(name).error.increment();
+    }
+
+    public void recordDuration(String name, long duration, boolean success) {
+        Stats stats = getStats(name);
+        if (!success) {
+            stats.failed.increment();
+        }
+        stats.totalDuration.add(duration);
+        stats.lastDuration.set(duration);
+        stats.maxDuration.accumulateAndGet(duration, Math::max);
+    }
+
+    /**
+     * 查询所有任务的统计数据
+     *
+     * @return
+     */
+    public List<TaskMetricsVO> list() {
+        return statsMap.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> {
+                    Stats stats = entry.getValue();
+                    return TaskMetricsVO.builder()
+                            .name(entry.getKey())
+                            .acquiredCount(stats.acquired.sum())
+                            .skippedCount(stats.skipped.sum())
+                            .errorCount(stats.error.sum())
+                            .failedCount(stats.failed.sum())
+                            .totalDuration(stats.totalDuration.sum())
+                            .maxDuration(stats.maxDuration.get())
+                            .lastDuration(stats.lastDuration.get())
+                            .lastToken(stats.lastToken.get())
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    private Stats getStats(String name) {
+        return statsMap.computeIfAbsent(name, k -> new Stats());
+    }
+
+    private static class Stats {
+        final LongAdder acquired = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder error = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder totalDuration = new LongAdder();
+        final AtomicLong maxDuration = new AtomicLong();
+        final AtomicLong lastDuration = new AtomicLong();
+        final AtomicLong lastToken = new AtomicLong();
+    }
+}
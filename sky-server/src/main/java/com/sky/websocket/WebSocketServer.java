@@ -1,33 +1,75 @@
 package com.sky.websocket;
 
+import com.sky.properties.WebSocketProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebSocket服务
+ * 群发时只把消息放入每个连接的发送队列，由后台线程异步发送，调用方（如支付回调）不会被慢连接阻塞
+ * 每个连接同一时间只有一个线程在发送，保证消息顺序；队列满时丢弃最早的消息，发送失败的连接会被关闭并移除
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
-    //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    // tomcat阻塞发送的超时时间属性
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    //存放会话对象，每个连接由容器创建一个端点实例，所以使用静态变量
+    private static final Map<String, Client> clientMap = new ConcurrentHashMap<>();
+    private static volatile ExecutorService sendExecutor;
+    private static volatile WebSocketProperties properties = new WebSocketProperties();
+
+    @Autowired
+    private WebSocketProperties webSocketProperties;
+
+    @PostConstruct
+    public void init() {
+        properties = webSocketProperties;
+        int threads = webSocketProperties.getSendThreads();
+        // 每个连接最多同时有一个发送任务，队列容量足够容纳所有连接
+        sendExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(1000), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (sendExecutor != null) {
+            sendExecutor.shutdownNow();
+        }
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, properties.getSendTimeout());
+        Client old = clientMap.put(sid, new Client(sid, session));
+        // 同一客户端重新连接，关闭旧连接
+        if (old != null && old.session != session) {
+            old.close();
+        }
     }
 
     /**
@@ -37,7 +79,7 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息：{}", sid, message);
     }
 
     /**
@@ -46,26 +88,115 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开：{}", sid);
+        remove(sid, session);
     }
 
     /**
-     * 群发
+     * 连接出错调用的方法
+     *
+     * @param session
+     * @param sid
+     * @param error
+     */
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable error) {
+        log.warn("连接出错：{}", sid, error);
+        remove(sid, session);
+    }
+
+    /**
+     * 群发，消息放入各连接的发送队列后立即返回
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
+        for (Client client : clientMap.values()) {
+            if (!client.session.isOpen()) {
+                remove(client.sid, client.session);
+                continue;
+            }
+            client.offer(message);
+            client.scheduleSend();
+        }
+    }
+
+    private static void remove(String sid, Session session) {
+        clientMap.computeIfPresent(sid, (k, client) -> client.session == session ? null : client);
+    }
+
+    /**
+     * 一个客户端连接及其发送队列
+     */
+    private static class Client {
+
+        private final String sid;
+        private final Session session;
+        private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queueSize = new AtomicInteger();
+        // 是否已有发送任务在执行或等待执行
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        Client(String sid, Session session) {
+            this.sid = sid;
+            this.session = session;
+        }
+
+        /**
+         * 消息入队，超出容量时丢弃最早的消息
+         *
+         * @param message
+         */
+        void offer(String message) {
+            queue.offer(message);
+            if (queueSize.incrementAndGet() > properties.getQueueCapacity() && queue.poll() != null) {
+                queueSize.decrementAndGet();
+                log.warn("客户端：{}消息积压，丢弃最早的消息", sid);
+            }
+        }
+
+        void scheduleSend() {
+            if (!sending.compareAndSet(false, true)) {
+                return;
+            }
             try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
+                sendExecutor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // 消息留在队列中，下次群发时再发送
+                sending.set(false);
+                log.warn("websocket发送线程繁忙，客户端：{}的消息延后发送", sid);
+            }
+        }
+
+        private void drain() {
+            try {
+                String message;
+                while ((message = queue.poll()) != null) {
+                    queueSize.decrementAndGet();
+                    //服务器向客户端发送消息，超时或失败时关闭连接
+                    session.getBasicRemote().sendText(message);
+                }
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("向客户端：{}发送消息失败，关闭连接", sid, e);
+                close();
+                remove(sid, session);
+                return;
+            } finally {
+                sending.set(false);
+            }
+            // 发送期间有新消息入队但未能启动发送任务
+            if (!queue.isEmpty()) {
+                scheduleSend();
             }
         }
-    }
 
+        void close() {
+            try {
+                session.close();
+            } catch (IOException e) {
+                log.debug("关闭连接失败：{}", sid, e);
+            }
+        }
+    }
 }
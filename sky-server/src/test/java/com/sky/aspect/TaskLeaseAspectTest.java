@@ -0,0 +1,146 @@
+package com.sky.aspect;
+
+import com.sky.annotation.TaskLease;
+import com.sky.lock.Lease;
+import com.sky.lock.LeaseManager;
+import com.sky.task.TaskMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * cron任务很快结束时，租约保留到minHold，时钟较慢的节点不会重复执行同一次触发
+ */
+class TaskLeaseAspectTest {
+
+    private final FakeLeaseManager leaseManager = new FakeLeaseManager();
+    private final AtomicInteger executed = new AtomicInteger();
+    private TaskLeaseAspect aspect;
+    private ProceedingJoinPoint joinPoint;
+
+    @BeforeEach
+    void setUp() throws Throwable {
+        aspect = new TaskLeaseAspect();
+        ReflectionTestUtils.setField(aspect, "leaseManager", leaseManager);
+        ReflectionTestUtils.setField(aspect, "taskMetrics", new TaskMetrics());
+        joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.proceed()).thenAnswer(invocation -> executed.incrementAndGet());
+    }
+
+    @Test
+    void fastCronJobKeepsLeaseUntilMinHold() throws Throwable {
+        TaskLease taskLease = taskLease("cronTask");
+
+        // 节点A按时触发，任务很快结束
+        assertEquals(1, aspect.around(joinPoint, taskLease));
+        long remaining = leaseManager.remaining("cronTask");
+        assertTrue(remaining > 4 * 60 * 1000L && remaining <= 5 * 60 * 1000L, "剩余时长：" + remaining);
+
+        // 节点B时钟慢了2秒，随后触发同一次任务
+        leaseManager.advance(2000);
+        assertNull(aspect.around(joinPoint, taskLease));
+        assertEquals(1, executed.get());
+
+        // minHold后租约过期，下一次触发正常执行
+        leaseManager.advance(5 * 60 * 1000L);
+        assertEquals(2, aspect.around(joinPoint, taskLease));
+    }
+
+    @Test
+    void jobWithoutMinHoldReleasesImmediately() throws Throwable {
+        TaskLease taskLease = taskLease("fixedDelayTask");
+
+        assertEquals(1, aspect.around(joinPoint, taskLease));
+        assertEquals(0, leaseManager.remaining("fixedDelayTask"));
+        assertEquals(2, aspect.around(joinPoint, taskLease));
+    }
+
+    @Test
+    void jobLongerThanMinHoldReleasesImmediately() throws Throwable {
+        TaskLease taskLease = taskLease("shortHoldTask");
+        doAnswer(invocation -> {
+            Thread.sleep(150);
+            return executed.incrementAndGet();
+        }).when(joinPoint).proceed();
+
+        assertEquals(1, aspect.around(joinPoint, taskLease));
+        assertEquals(0, leaseManager.remaining("shortHoldTask"));
+    }
+
+    private static TaskLease taskLease(String method) throws NoSuchMethodException {
+        return Tasks.class.getDeclaredMethod(method).getAnnotation(TaskLease.class);
+    }
+
+    private static class Tasks {
+
+        @TaskLease(value = "cronTask", leaseTime = 10 * 60 * 1000L, minHold = 5 * 60 * 1000L)
+        void cronTask() {
+        }
+
+        @TaskLease(value = "shortHoldTask", minHold = 100)
+        void shortHoldTask() {
+        }
+
+        @TaskLease(value = "fixedDelayTask")
+        void fixedDelayTask() {
+        }
+    }
+
+    /**
+     * 内存中的租约，时间由测试推进；切面中任务的执行时间按真实时钟计算
+     */
+    private static class FakeLeaseManager extends LeaseManager {
+
+        private final AtomicLong now = new AtomicLong();
+        private final AtomicLong tokens = new AtomicLong();
+        // 租约名称 -> token, 到期时间
+        private final Map<String, long[]> leases = new ConcurrentHashMap<>();
+
+        @Override
+        public synchronized Lease tryAcquire(String name, long leaseTime) {
+            long[] current = leases.get(name);
+            if (current != null && current[1] > now.get()) {
+                return null;
+            }
+            long token = tokens.incrementAndGet();
+            leases.put(name, new long[]{token, now.get() + leaseTime});
+            return new Lease(name, token);
+        }
+
+        @Override
+        public synchronized void release(Lease lease) {
+            long[] current = leases.get(lease.getName());
+            if (current != null && current[0] == lease.getToken()) {
+                leases.remove(lease.getName());
+            }
+        }
+
+        @Override
+        public synchronized void hold(Lease lease, long holdTime) {
+            long[] current = leases.get(lease.getName());
+            if (current != null && current[0] == lease.getToken()) {
+                current[1] = now.get() + holdTime;
+            }
+        }
+
+        void advance(long millis) {
+            now.addAndGet(millis);
+        }
+
+        synchronized long remaining(String name) {
+            long[] current = leases.get(name);
+            return current == null ? 0 : Math.max(0, current[1] - now.get());
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.sky.cache;
+
+import com.sky.config.CompatibleRedisSerializer;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 菜单缓存：并发未命中只加载一次；加载期间其他节点清理缓存时，加载结果不写回redis
+ * redis用内存实现模拟，lua脚本的语义在模拟中按原样实现
+ */
+class MenuCacheManagerTest {
+
+    private static final int THREADS = 32;
+
+    private final FakeRedis redis = new FakeRedis();
+    private final MenuCacheProperties properties = new MenuCacheProperties();
+    private final List<MenuCacheManager> nodes = new ArrayList<>();
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        nodes.forEach(MenuCacheManager::destroy);
+    }
+
+    @Test
+    void concurrentMissesLoadOnce() throws Exception {
+        MenuCacheManager node = node();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Supplier<List<DishVO>> loader = () -> {
+            loads.incrementAndGet();
+            sleep(200);
+            return dishes("宫保鸡丁");
+        };
+
+        List<Future<List<DishVO>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return node.getDishes(1L, loader);
+            }));
+        }
+        start.countDown();
+
+        for (Future<List<DishVO>> future : futures) {
+            assertEquals("宫保鸡丁", future.get(5, TimeUnit.SECONDS).get(0).getName());
+        }
+        assertEquals(1, loads.get());
+        // 写入redis时带过期时间
+        assertEquals(properties.getRedisTtl(), redis.ttls.get("dish_1"));
+
+        // 之后命中本地缓存
+        node.getDishes(1L, loader);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void loaderFailureIsSharedAndNotCached() throws Exception {
+        MenuCacheManager node = node();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Supplier<List<DishVO>> failing = () -> {
+            loads.incrementAndGet();
+            sleep(200);
+            throw new IllegalStateException("db down");
+        };
+
+        List<Future<List<DishVO>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return node.getDishes(1L, failing);
+            }));
+        }
+        start.countDown();
+        for (Future<List<DishVO>> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, loads.get());
+
+        assertEquals("鱼香肉丝", node.getDishes(1L, () -> dishes("鱼香肉丝")).get(0).getName());
+    }
+
+    @Test
+    void loadStartedBeforeRemoteEvictIsNotWrittenBack() throws Exception {
+        MenuCacheManager nodeA = node();
+        MenuCacheManager nodeB = node();
+        // 清理通知延迟到达
+        redis.holdMessages = true;
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<List<DishVO>> slowLoad = executor.submit(() -> nodeA.getDishes(1L, () -> {
+            loading.countDown();
+            await(release);
+            return dishes("旧菜单");
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // 管理端在节点B修改了菜品，此时节点A的加载还没有结束
+        nodeB.evictDishes(Collections.singletonList(1L));
+        release.countDown();
+        slowLoad.get(5, TimeUnit.SECONDS);
+
+        // 旧数据没有写回redis，也没有进入节点A的本地缓存
+        assertNull(redis.values.get("dish_1"));
+        assertEquals("新菜单", nodeA.getDishes(1L, () -> dishes("新菜单")).get(0).getName());
+        assertEquals("新菜单", nodeB.getDishes(1L, () -> dishes("另一次加载")).get(0).getName());
+
+        redis.deliverHeldMessages();
+    }
+
+    @Test
+    void evictNotifiesAllNodes() {
+        MenuCacheManager nodeA = node();
+        MenuCacheManager nodeB = node();
+        nodeA.getDishes(1L, () -> dishes("旧菜单"));
+        nodeB.getDishes(1L, () -> dishes("旧菜单"));
+
+        nodeB.evictDishes(Collections.singletonList(1L));
+
+        assertEquals("新菜单", nodeA.getDishes(1L, () -> dishes("新菜单")).get(0).getName());
+        assertEquals("新菜单", nodeB.getDishes(1L, () -> dishes("另一次加载")).get(0).getName());
+    }
+
+    private MenuCacheManager node() {
+        MenuCacheManager node = new MenuCacheManager();
+        ReflectionTestUtils.setField(node, "redisTemplate", redis.redisTemplate);
+        ReflectionTestUtils.setField(node, "stringRedisTemplate", redis.stringRedisTemplate);
+        ReflectionTestUtils.setField(node, "redisMessageListenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(node, "menuCacheProperties", properties);
+        ReflectionTestUtils.setField(node, "productSnapshotCache", mock(ProductSnapshotCache.class));
+        node.init();
+        redis.listeners.add(node);
+        nodes.add(node);
+        return node;
+    }
+
+    private static List<DishVO> dishes(String name) {
+        DishVO dish = new DishVO();
+        dish.setId(1L);
+        dish.setName(name);
+        return Collections.singletonList(dish);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 内存中的redis，实现MenuCacheManager用到的命令和脚本
+     */
+    private static class FakeRedis {
+
+        private final RedisScript<?> writeScript = (RedisScript<?>) ReflectionTestUtils.getField(MenuCacheManager.class, "WRITE_SCRIPT");
+        private final RedisScript<?> evictScript = (RedisScript<?>) ReflectionTestUtils.getField(MenuCacheManager.class, "EVICT_SCRIPT");
+        private final RedisSerializer<Object> serializer = new CompatibleRedisSerializer(CompatibleRedisSerializer.SMILE);
+
+        private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+        private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+        private final Map<String, Long> versions = new ConcurrentHashMap<>();
+        private final List<MenuCacheManager> listeners = new CopyOnWriteArrayList<>();
+        private final List<String> heldMessages = new CopyOnWriteArrayList<>();
+        private volatile boolean holdMessages;
+
+        private final RedisTemplate redisTemplate = mock(RedisTemplate.class);
+        private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+        FakeRedis() {
+            ValueOperations valueOperations = mock(ValueOperations.class);
+            when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+            when(redisTemplate.getValueSerializer()).thenReturn(serializer);
+            when(valueOperations.get(anyString())).thenAnswer(invocation -> {
+                byte[] bytes = values.get(invocation.<String>getArgument(0));
+                return bytes == null ? null : serializer.deserialize(bytes);
+            });
+            when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                    anyList(), any(), any(), any())).thenAnswer(invocation -> {
+                assertSame(writeScript, invocation.getArgument(0));
+                List<String> keys = invocation.getArgument(3);
+                return write(keys.get(0), keys.get(1), invocation.getArgument(4), invocation.getArgument(5), invocation.getArgument(6));
+            });
+
+            ValueOperations<String, String> stringOperations = mock(ValueOperations.class);
+            when(stringRedisTemplate.opsForValue()).thenReturn(stringOperations);
+            when(stringOperations.get(anyString())).thenAnswer(invocation -> {
+                Long version = versions.get(invocation.<String>getArgument(0));
+                return version == null ? null : version.toString();
+            });
+            when(stringRedisTemplate.execute(any(RedisScript.class), anyList())).thenAnswer(invocation -> {
+                assertSame(evictScript, invocation.getArgument(0));
+                return evict(invocation.getArgument(1));
+            });
+            doAnswer(invocation -> {
+                publish(invocation.getArgument(1));
+                return null;
+            }).when(stringRedisTemplate).convertAndSend(anyString(), anyString());
+        }
+
+        private synchronized Long write(String key, String versionKey, byte[] version, byte[] value, byte[] ttl) {
+            String current = String.valueOf(versions.getOrDefault(versionKey, 0L));
+            if (!current.equals(new String(version, StandardCharsets.UTF_8))) {
+                return 0L;
+            }
+            values.put(key, value);
+            ttls.put(key, Long.valueOf(new String(ttl, StandardCharsets.UTF_8)));
+            return 1L;
+        }
+
+        private synchronized Long evict(List<String> keys) {
+            int n = keys.size() / 2;
+            for (int i = 0; i < n; i++) {
+                versions.merge(keys.get(n + i), 1L, Long::sum);
+                values.remove(keys.get(i));
+            }
+            return (long) n;
+        }
+
+        private void publish(String body) {
+            if (holdMessages) {
+                heldMessages.add(body);
+                return;
+            }
+            DefaultMessage message = new DefaultMessage("menu_cache_evict".getBytes(StandardCharsets.UTF_8),
+                    body.getBytes(StandardCharsets.UTF_8));
+            listeners.forEach(listener -> listener.onMessage(message, null));
+        }
+
+        private void deliverHeldMessages() {
+            holdMessages = false;
+            heldMessages.forEach(this::publish);
+            heldMessages.clear();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.sky.cache;
+
+import com.sky.entity.Dish;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.MenuCacheProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 商品快照失效或过期后在后台重新生成，生成期间读取方继续使用旧快照，不会阻塞
+ */
+class ProductSnapshotCacheTest {
+
+    private final AtomicReference<BigDecimal> price = new AtomicReference<>(new BigDecimal("10"));
+    private final AtomicInteger loads = new AtomicInteger();
+    // 不为null时，生成快照的查询等待放行
+    private volatile CountDownLatch loadGate;
+
+    private DishMapper dishMapper;
+    private MenuCacheProperties properties;
+    private ProductSnapshotCache cache;
+
+    @BeforeEach
+    void setUp() {
+        dishMapper = mock(DishMapper.class);
+        when(dishMapper.list(any())).thenAnswer(invocation -> {
+            CountDownLatch gate = loadGate;
+            if (gate != null) {
+                gate.await(10, TimeUnit.SECONDS);
+            }
+            loads.incrementAndGet();
+            List<Dish> dishes = new ArrayList<>();
+            dishes.add(Dish.builder().id(1L).name("宫保鸡丁").price(price.get()).status(1).build());
+            return dishes;
+        });
+        SetmealMapper setmealMapper = mock(SetmealMapper.class);
+        when(setmealMapper.list(any())).thenAnswer(invocation -> new ArrayList<>());
+        SetmealDishMapper setmealDishMapper = mock(SetmealDishMapper.class);
+        when(setmealDishMapper.list()).thenReturn(Collections.emptyList());
+
+        properties = new MenuCacheProperties();
+        cache = new ProductSnapshotCache();
+        ReflectionTestUtils.setField(cache, "dishMapper", dishMapper);
+        ReflectionTestUtils.setField(cache, "setmealMapper", setmealMapper);
+        ReflectionTestUtils.setField(cache, "setmealDishMapper", setmealDishMapper);
+        ReflectionTestUtils.setField(cache, "menuCacheProperties", properties);
+        cache.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    void readersKeepOldSnapshotWhileRebuilding() throws Exception {
+        assertEquals(0, new BigDecimal("10").compareTo(cache.getDish(1).getPrice()));
+
+        loadGate = new CountDownLatch(1);
+        price.set(new BigDecimal("12"));
+        // 生成期间连续多次失效
+        for (int i = 0; i < 5; i++) {
+            cache.invalidate();
+        }
+
+        // 读取方不等待生成，返回旧快照
+        ExecutorService readers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<BigDecimal>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(readers.submit(() -> cache.getDish(1).getPrice()));
+            }
+            for (Future<BigDecimal> future : futures) {
+                assertEquals(0, new BigDecimal("10").compareTo(future.get(1, TimeUnit.SECONDS)));
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+
+        loadGate.countDown();
+        waitForPrice("12");
+        // 首次生成一次；多次失效合并，后台最多生成两次（后台生成开始后仍有失效时再生成一次）
+        Thread.sleep(100);
+        assertTrue(loads.get() <= 3, "生成次数：" + loads.get());
+    }
+
+    @Test
+    void invalidationDuringRebuildTriggersAnotherRebuild() throws Exception {
+        cache.getDish(1);
+
+        loadGate = new CountDownLatch(1);
+        cache.invalidate();
+        // 后台生成开始后价格再次修改
+        Thread.sleep(100);
+        price.set(new BigDecimal("15"));
+        cache.invalidate();
+        loadGate.countDown();
+
+        waitForPrice("15");
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void expiredSnapshotIsRebuiltWithoutInvalidation() throws Exception {
+        properties.setLocalTtl(100);
+        cache.getDish(1);
+
+        // 清理通知丢失，快照过期后在后台重新生成
+        price.set(new BigDecimal("11"));
+        Thread.sleep(150);
+        assertEquals(0, new BigDecimal("10").compareTo(cache.getDish(1).getPrice()));
+        waitForPrice("11");
+    }
+
+    @Test
+    void failedRebuildKeepsOldSnapshot() throws Exception {
+        cache.getDish(1);
+
+        when(dishMapper.list(any())).thenThrow(new RuntimeException("数据库不可用"));
+        cache.invalidate();
+        Thread.sleep(100);
+        assertEquals(0, new BigDecimal("10").compareTo(cache.getDish(1).getPrice()));
+    }
+
+    private void waitForPrice(String expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (new BigDecimal(expected).compareTo(cache.getDish(1).getPrice()) != 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "快照未更新");
+            Thread.sleep(10);
+        }
+    }
+}
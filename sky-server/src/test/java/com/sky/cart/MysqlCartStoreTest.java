@@ -0,0 +1,205 @@
+package com.sky.cart;
+
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.support.MapperTestSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.AdditionalAnswers;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * mysql购物车并发加减：每次加减都是一条原子语句，不丢失更新，数量不会减为负数
+ */
+class MysqlCartStoreTest extends MapperTestSupport {
+
+    private static final long USER_ID = 7L;
+    private static final int THREADS = 16;
+    private static final int TAPS = 20;
+
+    private final Consumer<ShoppingCart> filler = cart -> {
+        cart.setName("宫保鸡丁");
+        cart.setAmount(new BigDecimal("28.00"));
+    };
+
+    private MysqlCartStore cartStore;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        cartStore = new MysqlCartStore();
+        ReflectionTestUtils.setField(cartStore, "shoppingCartMapper", mapper(ShoppingCartMapper.class));
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentAddsOfNewItemAreAllCounted() throws Exception {
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < TAPS; i++) {
+                cartStore.add(item(), filler);
+            }
+        });
+
+        List<ShoppingCart> list = cartStore.list(USER_ID);
+        assertEquals(1, list.size());
+        assertEquals(THREADS * TAPS, list.get(0).getNumber());
+        assertEquals("宫保鸡丁", list.get(0).getName());
+    }
+
+    @Test
+    void concurrentAddAndSubCancelOut() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            cartStore.add(item(), filler);
+        }
+
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < TAPS; i++) {
+                cartStore.add(item(), filler);
+                cartStore.sub(item());
+            }
+        });
+
+        assertEquals(50, cartStore.list(USER_ID).get(0).getNumber());
+    }
+
+    @Test
+    void subOfLastOneRetriesWhenAddInterleaves() {
+        ShoppingCartMapper real = mapper(ShoppingCartMapper.class);
+        ShoppingCartMapper spy = mock(ShoppingCartMapper.class, AdditionalAnswers.delegatesTo(real));
+        ReflectionTestUtils.setField(cartStore, "shoppingCartMapper", spy);
+        cartStore.add(item(), filler);
+
+        // 数量为1时减一失败，删除之前被并发加一
+        AtomicBoolean interleaved = new AtomicBoolean();
+        doAnswer(invocation -> {
+            int updated = real.decrementNumber(invocation.getArgument(0), invocation.getArgument(1));
+            if (updated == 0 && interleaved.compareAndSet(false, true)) {
+                cartStore.add(item(), filler);
+            }
+            return updated;
+        }).when(spy).decrementNumber(anyLong(), anyString());
+
+        cartStore.sub(item());
+
+        assertTrue(interleaved.get());
+        assertEquals(1, cartStore.list(USER_ID).get(0).getNumber());
+    }
+
+    @Test
+    void concurrentAddAndSubFromOne() throws Exception {
+        cartStore.add(item(), filler);
+
+        // 每个线程先减后加，数量在0和1附近反复变化；减到不存在时减一无效，因此最终数量至少为1
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < TAPS; i++) {
+                cartStore.sub(item());
+                cartStore.add(item(), filler);
+            }
+        });
+
+        List<ShoppingCart> list = cartStore.list(USER_ID);
+        assertEquals(1, list.size());
+        assertTrue(list.get(0).getNumber() >= 1);
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from shopping_cart where number <= 0", Integer.class));
+    }
+
+    @Test
+    void subOfMissingItemIsNoOp() {
+        cartStore.sub(item());
+        assertTrue(cartStore.list(USER_ID).isEmpty());
+    }
+
+    @Test
+    void concurrentSubsRemoveItemWithoutGoingNegative() throws Exception {
+        int initial = THREADS * TAPS / 2;
+        for (int i = 0; i < initial; i++) {
+            cartStore.add(item(), filler);
+        }
+
+        // 减的次数是数量的两倍
+        runConcurrently(THREADS, () -> {
+            for (int i = 0; i < TAPS; i++) {
+                cartStore.sub(item());
+            }
+        });
+
+        assertTrue(cartStore.list(USER_ID).isEmpty());
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from shopping_cart where number <= 0", Integer.class));
+    }
+
+    @Test
+    void flavorsAreSeparateItems() {
+        cartStore.add(item(), filler);
+        ShoppingCart spicy = item();
+        spicy.setDishFlavor("重辣");
+        cartStore.add(spicy, filler);
+        cartStore.add(spicy, filler);
+
+        List<ShoppingCart> list = cartStore.list(USER_ID);
+        assertEquals(2, list.size());
+        cartStore.sub(spicy);
+        cartStore.sub(spicy);
+        assertEquals(1, cartStore.list(USER_ID).size());
+        assertEquals(1, cartStore.list(USER_ID).get(0).getNumber());
+    }
+
+    @Test
+    void addBatchAccumulatesExistingItems() {
+        cartStore.add(item(), filler);
+
+        cartStore.addBatch(new ArrayList<>(Arrays.asList(
+                batchItem(2L, 3),
+                ShoppingCart.builder().userId(USER_ID).setmealId(9L).name("套餐").number(2)
+                        .amount(new BigDecimal("50.00")).createTime(LocalDateTime.now()).build())));
+
+        List<ShoppingCart> list = cartStore.list(USER_ID);
+        assertEquals(2, list.size());
+        assertEquals(4, list.stream().filter(c -> c.getDishId() != null).findFirst().get().getNumber());
+    }
+
+    private ShoppingCart item() {
+        return ShoppingCart.builder().userId(USER_ID).dishId(2L).build();
+    }
+
+    private ShoppingCart batchItem(Long dishId, int number) {
+        return ShoppingCart.builder().userId(USER_ID).dishId(dishId).name("宫保鸡丁").number(number)
+                .amount(new BigDecimal("28.00")).createTime(LocalDateTime.now()).build();
+    }
+
+    private void runConcurrently(int threads, Runnable task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+    }
+}
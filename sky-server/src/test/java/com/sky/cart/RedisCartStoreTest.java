@@ -0,0 +1,260 @@
+package com.sky.cart;
+
+import com.sky.config.CompatibleRedisSerializer;
+import com.sky.entity.ShoppingCart;
+import com.sky.properties.CartProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * redis购物车：新商品的信息和有效期在同一个脚本中写入；数量被并发减到0或补充信息失败时不留下多余的字段
+ * redis用内存实现模拟，lua脚本的语义在模拟中按原样实现
+ */
+class RedisCartStoreTest {
+
+    private static final long USER_ID = 7L;
+    private static final String ITEM_KEY = "cart_item_" + USER_ID;
+    private static final String NUMBER_KEY = "cart_number_" + USER_ID;
+
+    private final FakeRedis redis = new FakeRedis();
+    private final CartProperties properties = new CartProperties();
+
+    private final Consumer<ShoppingCart> filler = cart -> {
+        cart.setName("宫保鸡丁");
+        cart.setAmount(new BigDecimal("28.00"));
+    };
+
+    private RedisCartStore cartStore;
+
+    @BeforeEach
+    void setUp() {
+        cartStore = new RedisCartStore();
+        ReflectionTestUtils.setField(cartStore, "redisTemplate", redis.redisTemplate);
+        ReflectionTestUtils.setField(cartStore, "stringRedisTemplate", redis.stringRedisTemplate);
+        ReflectionTestUtils.setField(cartStore, "cartProperties", properties);
+    }
+
+    @Test
+    void firstAddSetsTtlOnBothHashes() {
+        cartStore.add(item(), filler);
+
+        List<ShoppingCart> list = cartStore.list(USER_ID);
+        assertEquals(1, list.size());
+        assertEquals("宫保鸡丁", list.get(0).getName());
+        assertEquals(1, list.get(0).getNumber());
+        // 首次加入时商品信息哈希也带有效期
+        assertEquals(properties.getTtl(), redis.ttls.get(ITEM_KEY));
+        assertEquals(properties.getTtl(), redis.ttls.get(NUMBER_KEY));
+    }
+
+    @Test
+    void existingItemNeedsOneScript() {
+        cartStore.add(item(), filler);
+        clearInvocations(redis.stringRedisTemplate, redis.redisTemplate);
+
+        cartStore.add(item(), cart -> fail("已有商品不需要补充信息"));
+
+        assertEquals(2, cartStore.list(USER_ID).get(0).getNumber());
+        verify(redis.stringRedisTemplate, times(1)).execute(same(redis.incrementScript), anyList(), any());
+        verify(redis.redisTemplate, never()).execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(), any(), any());
+    }
+
+    @Test
+    void subToZeroBeforeItemWriteLeavesNoOrphan() {
+        // 补充信息期间，另一个请求把该商品减到0
+        cartStore.add(item(), cart -> {
+            filler.accept(cart);
+            cartStore.sub(item());
+        });
+
+        assertTrue(cartStore.list(USER_ID).isEmpty());
+        assertFalse(redis.hashes.containsKey(ITEM_KEY));
+        assertFalse(redis.hashes.containsKey(NUMBER_KEY));
+    }
+
+    @Test
+    void fillerFailureRemovesNewItem() {
+        assertThrows(IllegalStateException.class, () -> cartStore.add(item(), cart -> {
+            throw new IllegalStateException("菜品不存在");
+        }));
+
+        assertFalse(redis.hashes.containsKey(NUMBER_KEY));
+        assertTrue(cartStore.list(USER_ID).isEmpty());
+    }
+
+    @Test
+    void fillerFailureKeepsConcurrentAdds() {
+        // 补充信息期间另一个请求也加了一份，失败时只撤销本次加的数量
+        assertThrows(IllegalStateException.class, () -> cartStore.add(item(), cart -> {
+            cartStore.add(item(), c -> fail("数量大于1时不需要补充信息"));
+            throw new IllegalStateException("数据库不可用");
+        }));
+
+        assertEquals("1", redis.hashes.get(NUMBER_KEY).get("d_1_"));
+
+        // 之后加入时数量已存在，商品信息由下一次新增补充
+        cartStore.sub(item());
+        cartStore.add(item(), filler);
+        assertEquals(1, cartStore.list(USER_ID).get(0).getNumber());
+    }
+
+    private static ShoppingCart item() {
+        return ShoppingCart.builder().userId(USER_ID).dishId(1L).build();
+    }
+
+    /**
+     * 内存中的redis，实现RedisCartStore用到的命令和脚本
+     */
+    private static class FakeRedis {
+
+        private final RedisScript<?> incrementScript = script("INCREMENT_SCRIPT");
+        private final RedisScript<?> putItemScript = script("PUT_ITEM_SCRIPT");
+        private final RedisScript<?> undoAddScript = script("UNDO_ADD_SCRIPT");
+        private final RedisScript<?> clearScript = script("CLEAR_SCRIPT");
+        private final RedisSerializer<Object> serializer = new CompatibleRedisSerializer(CompatibleRedisSerializer.SMILE);
+
+        // 商品信息哈希的值为序列化后的字节，商品数量哈希的值为字符串
+        private final Map<String, Map<String, Object>> hashes = new ConcurrentHashMap<>();
+        private final Map<String, Long> ttls = new ConcurrentHashMap<>();
+        private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+        private final RedisTemplate redisTemplate = mock(RedisTemplate.class);
+        private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+
+        FakeRedis() {
+            when(redisTemplate.getHashValueSerializer()).thenReturn(serializer);
+            HashOperations hashOperations = mock(HashOperations.class);
+            when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+            when(hashOperations.entries(anyString())).thenAnswer(invocation -> {
+                Map<String, Object> result = new HashMap<>();
+                hash(invocation.getArgument(0)).forEach((field, value) -> result.put(field, serializer.deserialize((byte[]) value)));
+                return result;
+            });
+            when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                    anyList(), any(), any(), any())).thenAnswer(invocation -> {
+                assertSame(putItemScript, invocation.getArgument(0));
+                List<String> keys = invocation.getArgument(3);
+                return putItem(keys.get(0), keys.get(1), string(invocation.getArgument(4)),
+                        invocation.getArgument(5), Long.parseLong(string(invocation.getArgument(6))));
+            });
+
+            HashOperations<String, String, String> stringHashOperations = mock(HashOperations.class);
+            when(stringRedisTemplate.<String, String>opsForHash()).thenReturn(stringHashOperations);
+            when(stringHashOperations.entries(anyString())).thenAnswer(invocation -> {
+                Map<String, String> result = new HashMap<>();
+                hash(invocation.getArgument(0)).forEach((field, value) -> result.put(field, (String) value));
+                return result;
+            });
+            // 单个any()匹配全部可变参数，按脚本区分
+            when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any())).thenAnswer(invocation -> {
+                RedisScript<?> script = invocation.getArgument(0);
+                List<String> keys = invocation.getArgument(1);
+                if (script == incrementScript) {
+                    return increment(keys.get(0), keys.get(1), keys.get(2), invocation.getArgument(2),
+                            Long.parseLong(invocation.getArgument(3)), Long.parseLong(invocation.getArgument(4)), invocation.getArgument(5));
+                }
+                if (script == undoAddScript) {
+                    return undoAdd(keys.get(0), keys.get(1), invocation.getArgument(2));
+                }
+                assertSame(clearScript, script);
+                return clear(keys.get(0), keys.get(1), keys.get(2), invocation.getArgument(2));
+            });
+        }
+
+        private synchronized Long increment(String itemKey, String numberKey, String dirtyKey,
+                                            String field, long delta, long ttl, String userId) {
+            long n = hincrby(numberKey, field, delta);
+            if (n <= 0) {
+                hdel(itemKey, field);
+                hdel(numberKey, field);
+            }
+            pexpire(itemKey, ttl);
+            pexpire(numberKey, ttl);
+            dirty.add(userId);
+            return n;
+        }
+
+        private synchronized Long putItem(String itemKey, String numberKey, String field, byte[] item, long ttl) {
+            if (!hashes.getOrDefault(numberKey, Collections.emptyMap()).containsKey(field)) {
+                return 0L;
+            }
+            hashes.computeIfAbsent(itemKey, k -> new ConcurrentHashMap<>()).putIfAbsent(field, item);
+            pexpire(itemKey, ttl);
+            pexpire(numberKey, ttl);
+            return 1L;
+        }
+
+        private synchronized Long undoAdd(String itemKey, String numberKey, String field) {
+            long n = hincrby(numberKey, field, -1);
+            if (n <= 0) {
+                hdel(itemKey, field);
+                hdel(numberKey, field);
+            }
+            return n;
+        }
+
+        private synchronized Long clear(String itemKey, String numberKey, String dirtyKey, String userId) {
+            hashes.remove(itemKey);
+            hashes.remove(numberKey);
+            ttls.remove(itemKey);
+            ttls.remove(numberKey);
+            return dirty.add(userId) ? 1L : 0L;
+        }
+
+        private long hincrby(String key, String field, long delta) {
+            Map<String, Object> hash = hashes.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+            long n = Long.parseLong((String) hash.getOrDefault(field, "0")) + delta;
+            hash.put(field, String.valueOf(n));
+            return n;
+        }
+
+        private void hdel(String key, String field) {
+            Map<String, Object> hash = hashes.get(key);
+            if (hash == null) {
+                return;
+            }
+            hash.remove(field);
+            // 最后一个字段删除后整个键不存在
+            if (hash.isEmpty()) {
+                hashes.remove(key);
+                ttls.remove(key);
+            }
+        }
+
+        private void pexpire(String key, long ttl) {
+            // 键不存在时PEXPIRE不生效
+            if (hashes.containsKey(key)) {
+                ttls.put(key, ttl);
+            }
+        }
+
+        private Map<String, Object> hash(String key) {
+            return hashes.getOrDefault(key, Collections.emptyMap());
+        }
+
+        private static String string(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static RedisScript<?> script(String name) {
+            return (RedisScript<?>) ReflectionTestUtils.getField(RedisCartStore.class, name);
+        }
+    }
+}
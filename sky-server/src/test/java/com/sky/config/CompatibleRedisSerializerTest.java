@@ -0,0 +1,126 @@
+package com.sky.config;
+
+import com.sky.entity.DishFlavor;
+import com.sky.entity.ShoppingCart;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * redis value序列化：三种格式结果一致、可互相读取旧数据，并对比菜单列表的体积和编解码耗时
+ */
+@Slf4j
+class CompatibleRedisSerializerTest {
+
+    private static final List<String> TYPES = Arrays.asList(
+            CompatibleRedisSerializer.JDK, CompatibleRedisSerializer.JSON, CompatibleRedisSerializer.SMILE);
+    private static final int ROUNDS = 500;
+
+    @Test
+    void roundTripMatchesForAllFormats() {
+        List<DishVO> menu = menu(20);
+        ShoppingCart cart = ShoppingCart.builder()
+                .id(1L).userId(2L).dishId(3L).dishFlavor("微辣").itemKey("d_3_微辣")
+                .number(2).amount(new BigDecimal("26.00")).createTime(LocalDateTime.of(2024, 5, 1, 12, 0, 0, 123_000_000))
+                .build();
+
+        for (String type : TYPES) {
+            CompatibleRedisSerializer serializer = new CompatibleRedisSerializer(type);
+            assertEquals(menu, serializer.deserialize(serializer.serialize(menu)), type);
+            assertEquals(cart, serializer.deserialize(serializer.serialize(cart)), type);
+            assertEquals(3200, serializer.deserialize(serializer.serialize(3200)), type);
+        }
+    }
+
+    @Test
+    void readsDataWrittenInAnyFormat() {
+        List<DishVO> menu = menu(5);
+        for (String writeType : TYPES) {
+            byte[] bytes = new CompatibleRedisSerializer(writeType).serialize(menu);
+            for (String readType : TYPES) {
+                assertEquals(menu, new CompatibleRedisSerializer(readType).deserialize(bytes), writeType + " -> " + readType);
+            }
+        }
+    }
+
+    @Test
+    void emptyValueIsNull() {
+        assertNull(new CompatibleRedisSerializer(CompatibleRedisSerializer.SMILE).deserialize(new byte[0]));
+        assertNull(new CompatibleRedisSerializer(CompatibleRedisSerializer.SMILE).deserialize(null));
+    }
+
+    @Test
+    void unknownTypeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CompatibleRedisSerializer("kryo"));
+    }
+
+    @Test
+    void compareSizeAndSpeed() {
+        List<DishVO> menu = menu(20);
+        int jdkSize = 0;
+        int smileSize = 0;
+        for (String type : TYPES) {
+            CompatibleRedisSerializer serializer = new CompatibleRedisSerializer(type);
+            byte[] bytes = serializer.serialize(menu);
+            // 预热
+            for (int i = 0; i < ROUNDS; i++) {
+                serializer.deserialize(serializer.serialize(menu));
+            }
+
+            long encodeStart = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                serializer.serialize(menu);
+            }
+            long encodeNanos = System.nanoTime() - encodeStart;
+            long decodeStart = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                serializer.deserialize(bytes);
+            }
+            long decodeNanos = System.nanoTime() - decodeStart;
+
+            log.info("{}: {} bytes, encode {} us, decode {} us", type, bytes.length,
+                    encodeNanos / ROUNDS / 1000, decodeNanos / ROUNDS / 1000);
+            if (CompatibleRedisSerializer.JDK.equals(type)) {
+                jdkSize = bytes.length;
+            } else if (CompatibleRedisSerializer.SMILE.equals(type)) {
+                smileSize = bytes.length;
+            }
+        }
+        // 默认的smile格式体积应明显小于原来的jdk序列化
+        assertTrue(smileSize < jdkSize * 0.7, "smile " + smileSize + " bytes, jdk " + jdkSize + " bytes");
+    }
+
+    /**
+     * 一个分类下的菜品列表，每个菜品带口味，与缓存中的实际数据结构一致
+     */
+    private List<DishVO> menu(int size) {
+        List<DishVO> menu = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            List<DishFlavor> flavors = new ArrayList<>();
+            flavors.add(DishFlavor.builder().id(i * 10L).dishId((long) i).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10L + 1).dishId((long) i).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\"]").build());
+            flavors.add(DishFlavor.builder().id(i * 10L + 2).dishId((long) i).name("温度").value("[\"热饮\",\"常温\",\"去冰\"]").build());
+
+            DishVO dish = new DishVO();
+            dish.setId((long) i);
+            dish.setName("招牌菜品" + i);
+            dish.setCategoryId(11L);
+            dish.setPrice(new BigDecimal("38.00").add(BigDecimal.valueOf(i)));
+            dish.setImage("https://sky-take-out.oss-cn-nanjing.aliyuncs.com/" + i + "-4b5b-9c3e-8d3e2a7f1c90.png");
+            dish.setDescription("精选食材，现点现做，第" + i + "道");
+            dish.setStatus(1);
+            dish.setUpdateTime(LocalDateTime.of(2024, 5, 1, 10, i % 60, 0));
+            dish.setFlavors(flavors);
+            menu.add(dish);
+        }
+        return menu;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sky.lock;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.TaskFenceMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.support.MapperTestSupport;
+import com.sky.task.OrderTask;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 租约token在数据库中校验：旧持有者在新持有者写入后不能再修改数据
+ */
+class LeaseFenceTest extends MapperTestSupport {
+
+    private static final String NAME = "orderTask.processTimeoutOrder";
+
+    private LeaseFence leaseFence;
+    private OrderTask orderTask;
+
+    @BeforeEach
+    void setUp() {
+        leaseFence = new LeaseFence();
+        ReflectionTestUtils.setField(leaseFence, "taskFenceMapper", mapper(TaskFenceMapper.class));
+        ReflectionTestUtils.setField(leaseFence, "transactionTemplate",
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+
+        orderTask = new OrderTask();
+        ReflectionTestUtils.setField(orderTask, "orderMapper", mapper(OrderMapper.class));
+        ReflectionTestUtils.setField(orderTask, "dailyBusinessStatsMapper", mapper(DailyBusinessStatsMapper.class));
+        ReflectionTestUtils.setField(orderTask, "orderTimeoutProperties", new OrderTimeoutProperties());
+        ReflectionTestUtils.setField(orderTask, "leaseFence", leaseFence);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LeaseContext.removeCurrentLease();
+    }
+
+    @Test
+    void staleTokenIsRejectedAfterNewerWrite() {
+        AtomicInteger executed = new AtomicInteger();
+
+        // 同一持有者可以多次写入
+        assertEquals(1, leaseFence.execute(new Lease(NAME, 5), executed::incrementAndGet));
+        assertEquals(2, leaseFence.execute(new Lease(NAME, 5), executed::incrementAndGet));
+        // 新持有者写入后，旧持有者被拒绝
+        assertEquals(3, leaseFence.execute(new Lease(NAME, 6), executed::incrementAndGet));
+        assertNull(leaseFence.execute(new Lease(NAME, 5), executed::incrementAndGet));
+        assertEquals(3, executed.get());
+        // 不同任务的token互不影响
+        assertEquals(4, leaseFence.execute(new Lease("other", 1), executed::incrementAndGet));
+    }
+
+    @Test
+    void newHolderWaitsForOldHolderToCommit() throws Exception {
+        CountDownLatch oldWriting = new CountDownLatch(1);
+        CountDownLatch releaseOld = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> oldHolder = executor.submit(() -> leaseFence.execute(new Lease(NAME, 5), () -> {
+                oldWriting.countDown();
+                try {
+                    releaseOld.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            }));
+            assertTrue(oldWriting.await(5, TimeUnit.SECONDS));
+
+            Future<Integer> newHolder = executor.submit(() -> leaseFence.execute(new Lease(NAME, 6), () -> 2));
+            // 旧持有者的事务未结束时，新持有者等待token记录的锁
+            assertThrows(TimeoutException.class, () -> newHolder.get(300, TimeUnit.MILLISECONDS));
+
+            releaseOld.countDown();
+            assertEquals(1, oldHolder.get(5, TimeUnit.SECONDS));
+            assertEquals(2, newHolder.get(5, TimeUnit.SECONDS));
+            assertNull(leaseFence.execute(new Lease(NAME, 5), () -> 3));
+        } finally {
+            releaseOld.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void expiredTaskStopsUpdatingOrders() {
+        LocalDateTime orderTime = LocalDateTime.now().minusHours(1);
+        for (int i = 0; i < 1200; i++) {
+            jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values ('N', ?, 1, ?, 10)",
+                    Orders.PENDING_PAYMENT, orderTime);
+        }
+        // 其他节点已用更大的token写入过
+        leaseFence.execute(new Lease(NAME, 6), () -> 0);
+
+        LeaseContext.setCurrentLease(new Lease(NAME, 5));
+        orderTask.processTimeoutOrder();
+        assertEquals(0, countByStatus(Orders.CANCELLED));
+
+        LeaseContext.setCurrentLease(new Lease(NAME, 7));
+        orderTask.processTimeoutOrder();
+        assertEquals(1200, countByStatus(Orders.CANCELLED));
+    }
+
+    private int countByStatus(Integer status) {
+        return jdbcTemplate.queryForObject("select count(*) from orders where status = ?", Integer.class, status);
+    }
+}
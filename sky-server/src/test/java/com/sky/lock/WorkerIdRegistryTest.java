@@ -0,0 +1,141 @@
+package com.sky.lock;
+
+import com.sky.config.OrderNumberConfiguration;
+import com.sky.properties.OrderNumberProperties;
+import com.sky.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 未配置workerId时从redis租用，配置了则直接使用；租约失效期间生成器停止生成id
+ */
+class WorkerIdRegistryTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private OrderNumberProperties properties;
+    private WorkerIdRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        properties = new OrderNumberProperties();
+        registry = new WorkerIdRegistry();
+        ReflectionTestUtils.setField(registry, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(registry, "orderNumberProperties", properties);
+    }
+
+    @Test
+    void leasedIdIsUsedWhenNotConfigured() {
+        stubAcquire(37L);
+
+        SnowflakeIdGenerator generator = new OrderNumberConfiguration().orderNumberGenerator(properties, registry);
+        assertEquals(37, workerIdOf(generator.nextId()));
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(), any(), any(), any());
+    }
+
+    @Test
+    void configuredIdSkipsRedis() {
+        properties.setWorkerId(9L);
+
+        SnowflakeIdGenerator generator = new OrderNumberConfiguration().orderNumberGenerator(properties, registry);
+        assertEquals(9, workerIdOf(generator.nextId()));
+        verifyNoInteractions(stringRedisTemplate);
+    }
+
+    @Test
+    void startupFailsWhenAllIdsAreTaken() {
+        stubAcquire(-1L);
+
+        assertThrows(IllegalStateException.class,
+                () -> new OrderNumberConfiguration().orderNumberGenerator(properties, registry));
+    }
+
+    @Test
+    void renewAndReleaseUseTheLeasedKey() {
+        stubAcquire(37L);
+        stubRenew(1L);
+        registry.register(new SnowflakeIdGenerator(properties.getEpoch()));
+
+        registry.renew();
+        registry.release();
+
+        // 续租：持有者, 租约时长；释放：持有者
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of("order_worker_37")), anyString(), eq("180000"));
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of("order_worker_37")), anyString());
+    }
+
+    @Test
+    void expiredLeaseStopsIdsUntilRenewed() throws InterruptedException {
+        properties.setWorkerLeaseTime(200);
+        stubAcquire(37L);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(properties.getEpoch());
+        registry.register(generator);
+
+        // redis不可用，续租失败，租约到期前仍可生成
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("redis不可用"));
+        registry.renew();
+        assertEquals(37, workerIdOf(generator.nextId()));
+
+        // 租约到期后停止生成
+        Thread.sleep(300);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // redis恢复后续租成功，恢复生成
+        reset(stringRedisTemplate);
+        stubRenew(1L);
+        registry.renew();
+        assertEquals(37, workerIdOf(generator.nextId()));
+    }
+
+    @Test
+    void idTakenByOtherNodeIsReplaced() {
+        stubAcquire(37L);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(properties.getEpoch());
+        registry.register(generator);
+        long before = generator.nextId();
+
+        // 租约过期期间被其他节点占用，换用新租用的id
+        stubRenew(0L);
+        stubAcquire(38L);
+        registry.renew();
+        long after = generator.nextId();
+        assertEquals(38, workerIdOf(after));
+        assertTrue(after > before);
+    }
+
+    @Test
+    void idTakenWithoutReplacementStopsIds() {
+        stubAcquire(37L);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(properties.getEpoch());
+        registry.register(generator);
+
+        // 被其他节点占用且没有可用的id，立即停止生成，不等租约到期
+        stubRenew(0L);
+        stubAcquire(-1L);
+        registry.renew();
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    private void stubAcquire(Long id) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any(), any())).thenReturn(id);
+    }
+
+    private void stubRenew(Long renewed) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(renewed);
+    }
+
+    private static long workerIdOf(long id) {
+        return (id >>> 12) & SnowflakeIdGenerator.MAX_WORKER_ID;
+    }
+}
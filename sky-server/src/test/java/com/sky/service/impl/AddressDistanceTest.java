@@ -0,0 +1,107 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.AddressBook;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.AddressBookMapper;
+import com.sky.properties.DeliveryProperties;
+import com.sky.utils.LruCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 地址簿中保存的配送距离：修改地址任一部分时重新计算，店铺坐标变更后不再使用旧距离
+ */
+class AddressDistanceTest {
+
+    private static final String SHOP = "32.111581,119.363188";
+
+    private DeliveryRangeServiceImpl deliveryRangeService;
+    private AddressBookMapper addressBookMapper;
+    private AddressBookServiceImpl addressBookService;
+
+    @BeforeEach
+    void setUp() {
+        DeliveryProperties deliveryProperties = new DeliveryProperties();
+        deliveryProperties.setMaxDistance(5000);
+        deliveryRangeService = new DeliveryRangeServiceImpl();
+        ReflectionTestUtils.setField(deliveryRangeService, "deliveryProperties", deliveryProperties);
+        ReflectionTestUtils.setField(deliveryRangeService, "shopCoordinate", SHOP);
+        deliveryRangeService.init();
+
+        addressBookMapper = mock(AddressBookMapper.class);
+        addressBookService = new AddressBookServiceImpl();
+        ReflectionTestUtils.setField(addressBookService, "addressBookMapper", addressBookMapper);
+        ReflectionTestUtils.setField(addressBookService, "deliveryRangeService", deliveryRangeService);
+
+        // 预先放入缓存，避免调用地图接口
+        cacheDistance("江苏省镇江市京口区学府路1号", 1000);
+        cacheDistance("江苏省南京市京口区学府路1号", 70000);
+    }
+
+    @Test
+    void changingCityOnlyRecomputesDistance() {
+        when(addressBookMapper.getById(1L)).thenReturn(address(1000, SHOP));
+
+        addressBookService.update(AddressBook.builder().id(1L).cityName("南京市").build());
+
+        ArgumentCaptor<AddressBook> captor = ArgumentCaptor.forClass(AddressBook.class);
+        verify(addressBookMapper).update(captor.capture());
+        assertEquals(70000, captor.getValue().getDistance());
+        assertEquals(SHOP, captor.getValue().getDistanceOrigin());
+    }
+
+    @Test
+    void changingOtherFieldsKeepsDistance() {
+        addressBookService.update(AddressBook.builder().id(1L).phone("13800000000").build());
+
+        verify(addressBookMapper, never()).getById(any());
+        ArgumentCaptor<AddressBook> captor = ArgumentCaptor.forClass(AddressBook.class);
+        verify(addressBookMapper).update(captor.capture());
+        assertNull(captor.getValue().getDistance());
+    }
+
+    @Test
+    void distanceFromOldShopCoordinateIsIgnored() {
+        // 店铺搬迁前保存的距离在范围内，按当前坐标实际已超出范围
+        AddressBook addressBook = address(1000, "31.0,118.0");
+        addressBook.setCityName("南京市");
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class,
+                () -> deliveryRangeService.checkOutOfRange(addressBook));
+        assertEquals(MessageConstant.OUT_OF_DELIVERY_RANGE, e.getMessage());
+    }
+
+    @Test
+    void distanceFromCurrentShopCoordinateIsUsed() {
+        // 保存的距离基于当前坐标时直接使用，不再查询
+        AddressBook addressBook = address(1000, SHOP);
+        addressBook.setDetail("未缓存的地址");
+
+        assertDoesNotThrow(() -> deliveryRangeService.checkOutOfRange(addressBook));
+    }
+
+    private AddressBook address(Integer distance, String distanceOrigin) {
+        return AddressBook.builder()
+                .id(1L)
+                .provinceName("江苏省")
+                .cityName("镇江市")
+                .districtName("京口区")
+                .detail("学府路1号")
+                .distance(distance)
+                .distanceOrigin(distanceOrigin)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void cacheDistance(String address, int distance) {
+        LruCache<String, Integer> cache =
+                (LruCache<String, Integer>) ReflectionTestUtils.getField(deliveryRangeService, "distanceCache");
+        cache.put(address, distance);
+    }
+}
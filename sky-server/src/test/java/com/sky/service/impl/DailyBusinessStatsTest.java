@@ -0,0 +1,197 @@
+package com.sky.service.impl;
+
+import com.sky.dto.OrdersCancelDTO;
+import com.sky.entity.DailyBusinessData;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.properties.ReportProperties;
+import com.sky.support.MapperTestSupport;
+import com.sky.task.BusinessStatsTask;
+import com.sky.task.OrderTask;
+import com.sky.vo.BusinessDataVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 每日营业数据汇总：读取汇总表的结果与直接统计原始数据一致，且只对缺少汇总的日期查询原始数据
+ * 过去日期的订单状态变化后，该日期改为查询原始数据，并由封存任务重新封存
+ */
+class DailyBusinessStatsTest extends MapperTestSupport {
+
+    private static final int DAYS = 20;
+
+    private final LocalDate today = LocalDate.now();
+    private DailyBusinessStatsMapper dailyBusinessStatsMapper;
+    private WorkspaceServiceImpl workspaceService;
+    private BusinessStatsTask businessStatsTask;
+    private OrderServiceImpl orderService;
+
+    @BeforeEach
+    void setUp() {
+        dailyBusinessStatsMapper = mapper(DailyBusinessStatsMapper.class);
+        workspaceService = new WorkspaceServiceImpl();
+        ReflectionTestUtils.setField(workspaceService, "orderMapper", mapper(OrderMapper.class));
+        ReflectionTestUtils.setField(workspaceService, "userMapper", mapper(UserMapper.class));
+        ReflectionTestUtils.setField(workspaceService, "dailyBusinessStatsMapper", dailyBusinessStatsMapper);
+
+        ReportProperties reportProperties = new ReportProperties();
+        reportProperties.setStatsBackfillDays(DAYS);
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderMapper", mapper(OrderMapper.class));
+        ReflectionTestUtils.setField(orderService, "dailyBusinessStatsMapper", dailyBusinessStatsMapper);
+        ReflectionTestUtils.setField(orderService, "transactionTemplate",
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+
+        businessStatsTask = new BusinessStatsTask();
+        ReflectionTestUtils.setField(businessStatsTask, "workspaceService", workspaceService);
+        ReflectionTestUtils.setField(businessStatsTask, "dailyBusinessStatsMapper", dailyBusinessStatsMapper);
+        ReflectionTestUtils.setField(businessStatsTask, "reportProperties", reportProperties);
+
+        for (int d = 0; d <= DAYS; d++) {
+            LocalDate date = today.minusDays(d);
+            for (int i = 0; i < d % 4 + 1; i++) {
+                int status = i % 2 == 0 ? Orders.COMPLETED : Orders.CANCELLED;
+                jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values ('N', ?, 1, ?, ?)",
+                        status, date.atTime(LocalTime.NOON).plusMinutes(i), 10 + d);
+            }
+            for (int i = 0; i < d % 3; i++) {
+                jdbcTemplate.update("insert into user (name, create_time) values ('u', ?)", date.atTime(LocalTime.NOON));
+            }
+        }
+    }
+
+    @Test
+    void sealPastDaysBackfillsMissingDays() {
+        businessStatsTask.sealPastDays();
+
+        LocalDate end = today.minusDays(1);
+        LocalDate begin = end.minusDays(DAYS - 1);
+        assertEquals(DAYS, dailyBusinessStatsMapper.getSealedDates(begin, end).size());
+        assertSameData(workspaceService.getRawDailyBusinessData(begin, end),
+                dailyBusinessStatsMapper.getSealedByDateRange(begin, end));
+    }
+
+    @Test
+    void onlyMissingDaysAreQueriedFromRawData() {
+        businessStatsTask.sealPastDays();
+        // 中间缺少一天
+        jdbcTemplate.update("delete from daily_business_stats where stat_date = ?", today.minusDays(10));
+
+        LocalDate begin = today.minusDays(DAYS - 1);
+        int before = statementCount.get();
+        List<DailyBusinessData> dataList = workspaceService.getDailyBusinessData(begin, today);
+        // 汇总表一次，缺少的一天和今天各查询订单和用户一次
+        assertEquals(5, statementCount.get() - before);
+
+        assertSameData(workspaceService.getRawDailyBusinessData(begin, today), dataList);
+    }
+
+    @Test
+    void cancelAfterSealingChangesReport() {
+        businessStatsTask.sealPastDays();
+        LocalDate date = today.minusDays(5);
+        LocalDate end = today.minusDays(1);
+        LocalDate begin = end.minusDays(DAYS - 1);
+        BusinessDataVO before = workspaceService.getBusinessData(date.atStartOfDay(), date.atTime(LocalTime.MAX));
+
+        // 管理端取消过去某天已完成的订单
+        Long orderId = jdbcTemplate.queryForObject("select min(id) from orders where status = ? and date(order_time) = ?",
+                Long.class, Orders.COMPLETED, date);
+        OrdersCancelDTO ordersCancelDTO = new OrdersCancelDTO();
+        ordersCancelDTO.setId(orderId);
+        ordersCancelDTO.setCancelReason("退款");
+        orderService.adminCancel(ordersCancelDTO);
+
+        assertFalse(dailyBusinessStatsMapper.getSealedDates(begin, end).contains(date));
+        BusinessDataVO after = workspaceService.getBusinessData(date.atStartOfDay(), date.atTime(LocalTime.MAX));
+        assertEquals(before.getTurnover() - (10 + 5), after.getTurnover(), 0.001);
+        assertEquals(before.getValidOrderCount() - 1, after.getValidOrderCount());
+        assertSameData(workspaceService.getRawDailyBusinessData(begin, today),
+                workspaceService.getDailyBusinessData(begin, today));
+
+        // 刚被标记为未封存的日期在时钟误差余量内不会封存
+        businessStatsTask.sealPastDays();
+        assertFalse(dailyBusinessStatsMapper.getSealedDates(begin, end).contains(date));
+
+        // 之后的封存任务重新封存该日期
+        jdbcTemplate.update("update daily_business_stats set update_time = dateadd(minute, -2, update_time)");
+        businessStatsTask.sealPastDays();
+        assertEquals(DAYS, dailyBusinessStatsMapper.getSealedDates(begin, end).size());
+        assertSameData(workspaceService.getRawDailyBusinessData(begin, end),
+                dailyBusinessStatsMapper.getSealedByDateRange(begin, end));
+    }
+
+    @Test
+    void dayUnsealedWhileSealingStaysUnsealed() {
+        LocalDate date = today.minusDays(5);
+        LocalDateTime readTime = LocalDateTime.now().minusMinutes(1);
+        DailyBusinessData data = workspaceService.getRawDailyBusinessData(date, date).get(0);
+        dailyBusinessStatsMapper.save(data, true, readTime);
+
+        // 查询原始数据之后订单状态发生变化
+        Long orderId = jdbcTemplate.queryForObject("select min(id) from orders where date(order_time) = ?", Long.class, date);
+        dailyBusinessStatsMapper.unsealByOrderIds(List.of(orderId));
+        dailyBusinessStatsMapper.save(data, true, readTime);
+        assertTrue(dailyBusinessStatsMapper.getSealedDates(date, date).isEmpty());
+
+        // 下一次封存时正常封存
+        dailyBusinessStatsMapper.save(data, true, LocalDateTime.now().plusSeconds(1));
+        assertEquals(List.of(date), dailyBusinessStatsMapper.getSealedDates(date, date));
+    }
+
+    @Test
+    void deliverySweepUnsealsAffectedDays() {
+        businessStatsTask.sealPastDays();
+        LocalDate date = today.minusDays(3);
+        jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values ('N', ?, 1, ?, 100)",
+                Orders.DELIVERY_IN_PROGRESS, date.atTime(LocalTime.NOON));
+
+        OrderTask orderTask = new OrderTask();
+        ReflectionTestUtils.setField(orderTask, "orderMapper", mapper(OrderMapper.class));
+        ReflectionTestUtils.setField(orderTask, "dailyBusinessStatsMapper", dailyBusinessStatsMapper);
+        orderTask.processDeliveryOrder();
+
+        LocalDate end = today.minusDays(1);
+        LocalDate begin = end.minusDays(DAYS - 1);
+        assertEquals(DAYS - 1, dailyBusinessStatsMapper.getSealedDates(begin, end).size());
+        assertFalse(dailyBusinessStatsMapper.getSealedDates(begin, end).contains(date));
+        assertSameData(workspaceService.getRawDailyBusinessData(begin, end),
+                workspaceService.getDailyBusinessData(begin, end));
+    }
+
+    @Test
+    void rawDataForScatteredDatesMatchesRangeQuery() {
+        LocalDate begin = today.minusDays(DAYS);
+        List<DailyBusinessData> range = workspaceService.getRawDailyBusinessData(begin, today);
+
+        List<DailyBusinessData> scattered = workspaceService.getRawDailyBusinessData(List.of(
+                today, today.minusDays(3), today.minusDays(4), today.minusDays(DAYS)));
+
+        assertSameData(List.of(range.get(0), range.get(DAYS - 4), range.get(DAYS - 3), range.get(DAYS)), scattered);
+    }
+
+    private void assertSameData(List<DailyBusinessData> expected, List<DailyBusinessData> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            DailyBusinessData e = expected.get(i);
+            DailyBusinessData a = actual.get(i);
+            assertEquals(e.getDate(), a.getDate());
+            assertEquals(e.getTurnover(), a.getTurnover(), 0.001);
+            assertEquals(e.getTotalOrderCount(), a.getTotalOrderCount());
+            assertEquals(e.getValidOrderCount(), a.getValidOrderCount());
+            assertEquals(e.getNewUsers(), a.getNewUsers());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sky.service.impl;
+
+import com.sky.context.BaseContext;
+import com.sky.entity.OrderDetail;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.result.PageResult;
+import com.sky.support.MapperTestSupport;
+import com.sky.vo.OrderVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 用户历史订单分页：每页的sql条数与页大小无关
+ */
+class OrderPageQueryTest extends MapperTestSupport {
+
+    private static final long USER_ID = 1L;
+    private static final int ORDER_COUNT = 60;
+
+    private OrderServiceImpl orderService;
+    private OrderDetailMapper orderDetailMapper;
+
+    @BeforeEach
+    void setUp() {
+        orderDetailMapper = mapper(OrderDetailMapper.class);
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderMapper", mapper(OrderMapper.class));
+        ReflectionTestUtils.setField(orderService, "orderDetailMapper", orderDetailMapper);
+
+        for (int i = 1; i <= ORDER_COUNT; i++) {
+            jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values (?, 5, ?, now() - ? minute, 10)",
+                    "N" + i, USER_ID, i);
+            long orderId = jdbcTemplate.queryForObject("select max(id) from orders", Long.class);
+            for (int j = 0; j < i % 3 + 1; j++) {
+                jdbcTemplate.update("insert into order_detail (name, order_id, dish_id, number, amount) values (?, ?, ?, 1, 5)",
+                        "dish" + j, orderId, j + 1);
+            }
+        }
+        // 其他用户的订单不应出现在结果中
+        jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values ('X', 5, 2, now(), 10)");
+        BaseContext.setCurrentId(USER_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithPageSize() {
+        int small = countStatements(5);
+        int large = countStatements(50);
+
+        // 分页插件的count + 订单分页 + 明细批量查询
+        assertEquals(3, small);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void detailsMatchPerOrderQuery() {
+        PageResult result = orderService.pageQuery4User(1, 50, null);
+
+        assertEquals((long) ORDER_COUNT, result.getTotal());
+        List<OrderVO> records = result.getRecords();
+        assertEquals(50, records.size());
+        for (OrderVO vo : records) {
+            assertEquals(USER_ID, vo.getUserId());
+            assertEquals(ids(orderDetailMapper.getByOrderId(vo.getId())), ids(vo.getOrderDetailList()));
+        }
+    }
+
+    private int countStatements(int pageSize) {
+        int before = statementCount.get();
+        PageResult result = orderService.pageQuery4User(1, pageSize, null);
+        assertEquals(pageSize, result.getRecords().size());
+        return statementCount.get() - before;
+    }
+
+    private List<Long> ids(List<OrderDetail> orderDetailList) {
+        return orderDetailList.stream().map(OrderDetail::getId).sorted().collect(Collectors.toList());
+    }
+}
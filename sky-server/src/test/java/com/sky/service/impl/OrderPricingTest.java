@@ -0,0 +1,196 @@
+package com.sky.service.impl;
+
+import com.sky.cart.CartStore;
+import com.sky.constant.MessageConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.context.BaseContext;
+import com.sky.dto.OrdersSubmitDTO;
+import com.sky.entity.*;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.AddressBookMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.mapper.UserMapper;
+import com.sky.properties.PricingProperties;
+import com.sky.service.DeliveryRangeService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.utils.SnowflakeIdGenerator;
+import com.sky.vo.OrderSubmitVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 下单金额由服务端按数据库中商品的当前价格计算：商品金额 + 打包费 + 配送费 + 餐具费
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OrderPricingTest {
+
+    private static final long USER_ID = 3L;
+
+    @Mock
+    private OrderMapper orderMapper;
+    @Mock
+    private OrderDetailMapper orderDetailMapper;
+    @Mock
+    private AddressBookMapper addressBookMapper;
+    @Mock
+    private CartStore cartStore;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private DeliveryRangeService deliveryRangeService;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private SetmealMapper setmealMapper;
+    @Mock
+    private SnowflakeIdGenerator orderNumberGenerator;
+    @Mock
+    private OrderTimeoutService orderTimeoutService;
+    @Spy
+    private PricingProperties pricingProperties = new PricingProperties();
+    @InjectMocks
+    private OrderServiceImpl orderService;
+
+    @BeforeEach
+    void setUp() {
+        BaseContext.setCurrentId(USER_ID);
+        pricingProperties.setPackFee(1);
+        pricingProperties.setDeliveryFee(new BigDecimal("6"));
+        pricingProperties.setTablewareFee(new BigDecimal("0.5"));
+
+        when(addressBookMapper.getById(1L)).thenReturn(AddressBook.builder().id(1L).phone("13800000000").consignee("张三").build());
+        when(userMapper.getById(USER_ID)).thenReturn(User.builder().id(USER_ID).name("张三").build());
+        when(orderNumberGenerator.nextId()).thenReturn(1001L);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
+        // 数据库中的当前价格，与购物车中保存的旧价格不同
+        when(dishMapper.getByIds(Set.of(10L))).thenReturn(List.of(Dish.builder().id(10L).name("宫保鸡丁")
+                .price(new BigDecimal("28.50")).status(StatusConstant.ENABLE).build()));
+        when(setmealMapper.getByIds(Set.of(20L))).thenReturn(List.of(Setmeal.builder().id(20L).name("双人套餐")
+                .price(new BigDecimal("88.00")).status(StatusConstant.ENABLE).build()));
+        when(cartStore.list(USER_ID)).thenReturn(Arrays.asList(
+                ShoppingCart.builder().userId(USER_ID).dishId(10L).number(2).amount(new BigDecimal("20.00")).build(),
+                ShoppingCart.builder().userId(USER_ID).setmealId(20L).number(1).amount(new BigDecimal("60.00")).build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void amountIsComputedFromCurrentPrices() {
+        // 按餐量提供餐具：餐具数 = 商品份数
+        OrderSubmitVO vo = orderService.submitOrder(submit(1, null));
+
+        // 商品 28.50 * 2 + 88.00 = 145.00，打包费 3 * 1，配送费 6，餐具 3 * 0.5
+        assertEquals(0, new BigDecimal("155.50").compareTo(vo.getOrderAmount()));
+
+        Orders orders = insertedOrder();
+        assertEquals(3, orders.getPackAmount());
+        assertEquals(0, new BigDecimal("155.50").compareTo(orders.getAmount()));
+
+        ArgumentCaptor<List<OrderDetail>> details = ArgumentCaptor.forClass(List.class);
+        verify(orderDetailMapper).insertBatch(details.capture());
+        assertEquals(0, new BigDecimal("28.50").compareTo(details.getValue().get(0).getAmount()));
+        assertEquals("宫保鸡丁", details.getValue().get(0).getName());
+        assertEquals(0, new BigDecimal("88.00").compareTo(details.getValue().get(1).getAmount()));
+        verify(cartStore).clear(USER_ID);
+        // 菜品和套餐各一次批量查询
+        verify(dishMapper, times(1)).getByIds(any());
+        verify(setmealMapper, times(1)).getByIds(any());
+    }
+
+    @Test
+    void chosenTablewareNumberIsCharged() {
+        OrderSubmitVO vo = orderService.submitOrder(submit(0, 5));
+
+        // 145.00 + 3 + 6 + 5 * 0.5
+        assertEquals(0, new BigDecimal("156.50").compareTo(vo.getOrderAmount()));
+        assertEquals(5, insertedOrder().getTablewareNumber());
+    }
+
+    @Test
+    void missingTablewareFieldsCountAsNone() {
+        OrderSubmitVO vo = orderService.submitOrder(submit(null, null));
+        assertEquals(0, new BigDecimal("154.00").compareTo(vo.getOrderAmount()));
+
+        vo = orderService.submitOrder(submit(0, null));
+        assertEquals(0, new BigDecimal("154.00").compareTo(vo.getOrderAmount()));
+        assertEquals(0, insertedOrder().getTablewareNumber());
+    }
+
+    @Test
+    void disabledItemIsRejected() {
+        when(setmealMapper.getByIds(Set.of(20L))).thenReturn(List.of(Setmeal.builder().id(20L).name("双人套餐")
+                .price(new BigDecimal("88.00")).status(StatusConstant.DISABLE).build()));
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class, () -> orderService.submitOrder(submit(1, null)));
+        assertEquals(MessageConstant.CART_ITEM_UNAVAILABLE, e.getMessage());
+        verify(orderMapper, never()).insert(any());
+        verify(cartStore, never()).clear(any());
+    }
+
+    @Test
+    void deletedItemIsRejected() {
+        when(dishMapper.getByIds(Set.of(10L))).thenReturn(Collections.emptyList());
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class, () -> orderService.submitOrder(submit(1, null)));
+        assertEquals(MessageConstant.CART_ITEM_UNAVAILABLE, e.getMessage());
+        verify(orderMapper, never()).insert(any());
+    }
+
+    @Test
+    void orderIsRejectedWhileWorkerLeaseIsLost() {
+        when(orderNumberGenerator.nextId()).thenThrow(new IllegalStateException("节点id未分配或租约已过期：37"));
+
+        OrderBusinessException e = assertThrows(OrderBusinessException.class, () -> orderService.submitOrder(submit(1, null)));
+        assertEquals(MessageConstant.ORDER_NUMBER_UNAVAILABLE, e.getMessage());
+        verify(orderMapper, never()).insert(any());
+    }
+
+    private OrdersSubmitDTO submit(Integer tablewareStatus, Integer tablewareNumber) {
+        OrdersSubmitDTO dto = new OrdersSubmitDTO();
+        dto.setAddressBookId(1L);
+        dto.setPayMethod(1);
+        dto.setTablewareStatus(tablewareStatus);
+        dto.setTablewareNumber(tablewareNumber);
+        // 客户端提交的金额不参与计算
+        dto.setAmount(new BigDecimal("1.00"));
+        return dto;
+    }
+
+    private Orders insertedOrder() {
+        ArgumentCaptor<Orders> captor = ArgumentCaptor.forClass(Orders.class);
+        verify(orderMapper, atLeastOnce()).insert(captor.capture());
+        return captor.getValue();
+    }
+}
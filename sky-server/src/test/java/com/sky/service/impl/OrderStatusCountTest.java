@@ -0,0 +1,90 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.support.MapperTestSupport;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.OrderStatisticsVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 订单状态统计：分组查询的结果与逐个状态count一致，且只执行一条sql
+ */
+class OrderStatusCountTest extends MapperTestSupport {
+
+    private OrderMapper orderMapper;
+    private OrderServiceImpl orderService;
+    private WorkspaceServiceImpl workspaceService;
+
+    @BeforeEach
+    void setUp() {
+        orderMapper = mapper(OrderMapper.class);
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderMapper", orderMapper);
+        workspaceService = new WorkspaceServiceImpl();
+        ReflectionTestUtils.setField(workspaceService, "orderMapper", orderMapper);
+
+        // 今天和两天前的订单覆盖所有状态，各状态数量不同
+        for (int status = Orders.PENDING_PAYMENT; status <= Orders.CANCELLED; status++) {
+            for (int i = 0; i < status * 2; i++) {
+                insertOrder(status, LocalDateTime.now().with(LocalTime.MIN).plusSeconds(i + 1));
+            }
+            for (int i = 0; i < status; i++) {
+                insertOrder(status, LocalDateTime.now().minusDays(2));
+            }
+        }
+    }
+
+    @Test
+    void statisticsMatchesPerStatusCount() {
+        int before = statementCount.get();
+        OrderStatisticsVO statistics = orderService.statistics();
+        assertEquals(1, statementCount.get() - before);
+
+        assertEquals(orderMapper.getStatus(Orders.TO_BE_CONFIRMED), statistics.getToBeConfirmed());
+        assertEquals(orderMapper.getStatus(Orders.CONFIRMED), statistics.getConfirmed());
+        assertEquals(orderMapper.getStatus(Orders.DELIVERY_IN_PROGRESS), statistics.getDeliveryInProgress());
+    }
+
+    @Test
+    void orderOverViewMatchesCountByMap() {
+        int before = statementCount.get();
+        OrderOverViewVO overView = workspaceService.getOrderOverView();
+        assertEquals(1, statementCount.get() - before);
+
+        assertEquals(countToday(Orders.TO_BE_CONFIRMED), overView.getWaitingOrders());
+        assertEquals(countToday(Orders.CONFIRMED), overView.getDeliveredOrders());
+        assertEquals(countToday(Orders.COMPLETED), overView.getCompletedOrders());
+        assertEquals(countToday(Orders.CANCELLED), overView.getCancelledOrders());
+        assertEquals(countToday(null), overView.getAllOrders());
+    }
+
+    @Test
+    void missingStatusCountsAsZero() {
+        jdbcTemplate.update("delete from orders where status = ?", Orders.CONFIRMED);
+
+        assertEquals(0, orderService.statistics().getConfirmed());
+        assertEquals(0, workspaceService.getOrderOverView().getDeliveredOrders());
+    }
+
+    private Integer countToday(Integer status) {
+        Map map = new HashMap();
+        map.put("begin", LocalDateTime.now().with(LocalTime.MIN));
+        map.put("status", status);
+        return orderMapper.countByMap(map);
+    }
+
+    private void insertOrder(int status, LocalDateTime orderTime) {
+        jdbcTemplate.update("insert into orders (number, status, user_id, order_time, amount) values ('N', ?, 1, ?, 10)",
+                status, orderTime);
+    }
+}
@@ -0,0 +1,136 @@
+package com.sky.service.impl;
+
+import com.sky.mapper.DailyBusinessStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 领取到期订单时只推后到期时间，取消成功后才从集合中删除
+ */
+class OrderTimeoutServiceTest {
+
+    private static final String TIMEOUT_KEY = "order_timeout";
+
+    // 模拟redis有序集合：订单id -> 到期时间
+    private final Map<String, Double> timeouts = new ConcurrentHashMap<>();
+
+    private OrderMapper orderMapper;
+    private OrderTimeoutProperties properties;
+    private OrderTimeoutServiceImpl orderTimeoutService;
+
+    @BeforeEach
+    void setUp() {
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ZSetOperations<String, String> zSetOperations = mock(ZSetOperations.class);
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(zSetOperations.add(eq(TIMEOUT_KEY), anyString(), anyDouble())).thenAnswer(invocation -> {
+            timeouts.put(invocation.getArgument(1), invocation.getArgument(2));
+            return true;
+        });
+        when(zSetOperations.remove(eq(TIMEOUT_KEY), any())).thenAnswer(invocation -> {
+            Object[] ids = Arrays.copyOfRange(invocation.getArguments(), 1, invocation.getArguments().length);
+            return Arrays.stream(ids).filter(id -> timeouts.remove(id) != null).count();
+        });
+        // 领取脚本：取出到期的id，并把到期时间改为领取超时的时间
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(List.of(TIMEOUT_KEY)), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    long now = Long.parseLong(invocation.getArgument(2));
+                    int limit = Integer.parseInt(invocation.getArgument(3));
+                    double claimUntil = Double.parseDouble(invocation.getArgument(4));
+                    List<String> ids = timeouts.entrySet().stream()
+                            .filter(e -> e.getValue() <= now)
+                            .sorted(Map.Entry.comparingByValue())
+                            .limit(limit)
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toList());
+                    ids.forEach(id -> timeouts.put(id, claimUntil));
+                    return ids;
+                });
+
+        orderMapper = mock(OrderMapper.class);
+        properties = new OrderTimeoutProperties();
+        orderTimeoutService = new OrderTimeoutServiceImpl();
+        ReflectionTestUtils.setField(orderTimeoutService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(orderTimeoutService, "orderMapper", orderMapper);
+        ReflectionTestUtils.setField(orderTimeoutService, "dailyBusinessStatsMapper", mock(DailyBusinessStatsMapper.class));
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        ReflectionTestUtils.setField(orderTimeoutService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(orderTimeoutService, "orderTimeoutProperties", properties);
+    }
+
+    @Test
+    void idsAreRemovedOnlyAfterCancelCommits() {
+        long past = System.currentTimeMillis() - 1000;
+        timeouts.put("1", (double) past);
+        timeouts.put("2", (double) past);
+        timeouts.put("3", (double) System.currentTimeMillis() + 60_000);
+
+        when(orderMapper.cancelByIds(anyList(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            // 取消时订单仍在集合中，只是暂时不会被其他节点领取
+            assertTrue(timeouts.get("1") > System.currentTimeMillis());
+            assertTrue(timeouts.get("2") > System.currentTimeMillis());
+            assertEquals(0, orderTimeoutService.cancelDueOrders());
+            return 2;
+        });
+
+        assertEquals(2, orderTimeoutService.cancelDueOrders());
+        verify(orderMapper).cancelByIds(eq(List.of(1L, 2L)), any(), any(), any(), any());
+        assertEquals(Set.of("3"), timeouts.keySet());
+    }
+
+    @Test
+    void failedCancelIsClaimedAgainAfterTimeout() {
+        properties.setClaimTimeout(200);
+        timeouts.put("1", (double) System.currentTimeMillis() - 1000);
+        when(orderMapper.cancelByIds(anyList(), any(), any(), any(), any()))
+                .thenThrow(new RuntimeException("数据库不可用"))
+                .thenReturn(1);
+
+        assertEquals(0, orderTimeoutService.cancelDueOrders());
+        // 领取超时前不会被重新领取
+        assertTrue(timeouts.containsKey("1"));
+        assertEquals(0, orderTimeoutService.cancelDueOrders());
+
+        timeouts.put("1", (double) System.currentTimeMillis() - 1);
+        assertEquals(1, orderTimeoutService.cancelDueOrders());
+        assertTrue(timeouts.isEmpty());
+        verify(orderMapper, times(2)).cancelByIds(eq(List.of(1L)), any(), any(), any(), any());
+    }
+
+    @Test
+    void nodeCrashBeforeCancelLeavesIdsForRetry() {
+        properties.setClaimTimeout(200);
+        timeouts.put("1", (double) System.currentTimeMillis() - 1000);
+        // 节点领取后在更新前宕机
+        when(orderMapper.cancelByIds(anyList(), any(), any(), any(), any())).thenThrow(new Error("宕机"));
+
+        assertThrows(Error.class, () -> orderTimeoutService.cancelDueOrders());
+        double claimUntil = timeouts.get("1");
+        assertTrue(claimUntil > System.currentTimeMillis() - 1000);
+
+        // 领取超时后其他节点重新领取
+        reset(orderMapper);
+        when(orderMapper.cancelByIds(anyList(), any(), any(), any(), any())).thenReturn(1);
+        timeouts.put("1", claimUntil - 200);
+        assertEquals(1, orderTimeoutService.cancelDueOrders());
+        assertTrue(timeouts.isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+package com.sky.support;
+
+import com.github.pagehelper.PageInterceptor;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * mapper测试基类：每个测试使用一个独立的H2内存库（MySQL模式），加载与生产相同的mapper配置
+ */
+public abstract class MapperTestSupport {
+
+    protected PooledDataSource dataSource;
+    protected SqlSessionTemplate sqlSession;
+    protected JdbcTemplate jdbcTemplate;
+    // 执行的sql语句数
+    protected final AtomicInteger statementCount = new AtomicInteger();
+
+    @BeforeEach
+    void setUpDatabase() throws Exception {
+        String url = "jdbc:h2:mem:" + UUID.randomUUID()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=USER,VALUE;DB_CLOSE_DELAY=-1"
+                + ";INIT=CREATE SCHEMA IF NOT EXISTS sky_take_out\\;SET SCHEMA sky_take_out";
+        dataSource = new PooledDataSource("org.h2.Driver", url, "sa", "");
+        dataSource.setPoolMaximumActiveConnections(32);
+        dataSource.setPoolMaximumIdleConnections(32);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        Configuration configuration = new Configuration();
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.addInterceptor(new StatementCountInterceptor(statementCount));
+
+        PageInterceptor pageInterceptor = new PageInterceptor();
+        pageInterceptor.setProperties(new Properties());
+
+        SqlSessionFactoryBean factoryBean = new SqlSessionFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setConfiguration(configuration);
+        factoryBean.setTypeAliasesPackage("com.sky.entity");
+        factoryBean.setMapperLocations(new PathMatchingResourcePatternResolver().getResources("classpath:mapper/*.xml"));
+        factoryBean.setPlugins(pageInterceptor);
+        SqlSessionFactory sqlSessionFactory = factoryBean.getObject();
+
+        sqlSession = new SqlSessionTemplate(sqlSessionFactory);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    protected <T> T mapper(Class<T> type) {
+        if (!sqlSession.getConfiguration().hasMapper(type)) {
+            sqlSession.getConfiguration().addMapper(type);
+        }
+        return sqlSession.getMapper(type);
+    }
+}
@@ -0,0 +1,29 @@
+package com.sky.support;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 统计发往数据库的sql语句数
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class StatementCountInterceptor implements Interceptor {
+
+    private final AtomicInteger counter;
+
+    public StatementCountInterceptor(AtomicInteger counter) {
+        this.counter = counter;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        counter.incrementAndGet();
+        return invocation.proceed();
+    }
+}
@@ -0,0 +1,147 @@
+package com.sky.utils;
+
+import com.sky.properties.WeChatProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.PrivateKey;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 微信支付签名客户端：密钥和证书只加载一次，文件变更后重新加载，所有请求共享连接池（使用本地桩服务）
+ */
+class WeChatPayUtilTest {
+
+    private static final int REQUESTS = 100;
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private String url;
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+
+    private Path privateKeyFile;
+    private WeChatPayUtil weChatPayUtil;
+
+    @BeforeAll
+    static void disableNagle() {
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v3", exchange -> {
+            connections.add(exchange.getRemoteAddress());
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"prepay_id\":\"wx123\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v3/pay";
+
+        privateKeyFile = copy("wechatpay/apiclient_key.pem", "apiclient_key.pem");
+        Path certFile = copy("wechatpay/wechatpay_cert.pem", "wechatpay_cert.pem");
+
+        WeChatProperties weChatProperties = new WeChatProperties();
+        weChatProperties.setMchid("1900000000");
+        weChatProperties.setMchSerialNo("TEST_SERIAL");
+        weChatProperties.setPrivateKeyFilePath(privateKeyFile.toString());
+        weChatProperties.setWeChatPayCertFilePath(certFile.toString());
+
+        weChatPayUtil = new WeChatPayUtil();
+        ReflectionTestUtils.setField(weChatPayUtil, "weChatProperties", weChatProperties);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        weChatPayUtil.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    void keysLoadedOnceAndConnectionReused() {
+        Object first = null;
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals("{\"prepay_id\":\"wx123\"}", post("{\"i\":" + i + "}"));
+            Object current = signedClient();
+            if (first == null) {
+                first = current;
+            }
+            assertSame(first, current);
+        }
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    void unchangedFilesAreNotReloaded() {
+        post("{}");
+        Object first = signedClient();
+
+        // 超过检查间隔但文件未变更
+        ReflectionTestUtils.setField(first, "checkedAt", 0L);
+        post("{}");
+
+        assertSame(first, signedClient());
+    }
+
+    @Test
+    void changedPrivateKeyIsReloaded() throws Exception {
+        post("{}");
+        Object first = signedClient();
+        PrivateKey firstKey = merchantPrivateKey(first);
+
+        // 轮换商户私钥
+        try (InputStream in = new ClassPathResource("wechatpay/apiclient_key_rotated.pem").getInputStream()) {
+            Files.copy(in, privateKeyFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        privateKeyFile.toFile().setLastModified(privateKeyFile.toFile().lastModified() + 10_000);
+        ReflectionTestUtils.setField(first, "checkedAt", 0L);
+
+        assertEquals("{\"prepay_id\":\"wx123\"}", post("{}"));
+        Object reloaded = signedClient();
+        assertNotSame(first, reloaded);
+        assertFalse(Arrays.equals(firstKey.getEncoded(), merchantPrivateKey(reloaded).getEncoded()));
+        // 新客户端继续使用共享连接池中的连接
+        assertEquals(1, connections.size());
+    }
+
+    private String post(String body) {
+        return ReflectionTestUtils.invokeMethod(weChatPayUtil, "post", url, body);
+    }
+
+    private Object signedClient() {
+        return ReflectionTestUtils.getField(weChatPayUtil, "signedClient");
+    }
+
+    private PrivateKey merchantPrivateKey(Object signedClient) {
+        return (PrivateKey) ReflectionTestUtils.getField(signedClient, "merchantPrivateKey");
+    }
+
+    private Path copy(String resource, String name) throws Exception {
+        Path target = dir.resolve(name);
+        try (InputStream in = new ClassPathResource(resource).getInputStream()) {
+            Files.copy(in, target);
+        }
+        return target;
+    }
+}
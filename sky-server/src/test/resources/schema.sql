@@ -0,0 +1,87 @@
+-- 测试用表结构，与生产库中用到的列保持一致
+
+create table orders
+(
+    id                      bigint auto_increment primary key,
+    number                  varchar(50),
+    status                  int default 1 not null,
+    user_id                 bigint,
+    address_book_id         bigint,
+    order_time              datetime,
+    checkout_time           datetime,
+    pay_method              int default 1,
+    pay_status              tinyint default 0,
+    amount                  decimal(10, 2),
+    remark                  varchar(100),
+    phone                   varchar(11),
+    address                 varchar(255),
+    user_name               varchar(32),
+    consignee               varchar(32),
+    cancel_reason           varchar(255),
+    rejection_reason        varchar(255),
+    cancel_time             datetime,
+    estimated_delivery_time datetime,
+    delivery_status         tinyint default 1,
+    delivery_time           datetime,
+    pack_amount             int,
+    tableware_number        int,
+    tableware_status        tinyint default 1
+);
+
+create table order_detail
+(
+    id          bigint auto_increment primary key,
+    name        varchar(32),
+    image       varchar(255),
+    order_id    bigint not null,
+    dish_id     bigint,
+    setmeal_id  bigint,
+    dish_flavor varchar(50),
+    number      int default 1 not null,
+    amount      decimal(10, 2)
+);
+
+create table user
+(
+    id          bigint auto_increment primary key,
+    openid      varchar(45),
+    name        varchar(32),
+    phone       varchar(11),
+    sex         varchar(2),
+    id_number   varchar(18),
+    avatar      varchar(500),
+    create_time datetime
+);
+
+create table shopping_cart
+(
+    id          bigint auto_increment primary key,
+    name        varchar(32),
+    image       varchar(255),
+    user_id     bigint not null,
+    dish_id     bigint,
+    setmeal_id  bigint,
+    dish_flavor varchar(50),
+    item_key    varchar(100) default '' not null,
+    number      int default 1 not null,
+    amount      decimal(10, 2),
+    create_time datetime,
+    constraint uk_user_item unique (user_id, item_key)
+);
+
+create table daily_business_stats
+(
+    stat_date         date primary key,
+    turnover          decimal(12, 2) default 0 not null,
+    total_order_count int            default 0 not null,
+    valid_order_count int            default 0 not null,
+    new_users         int            default 0 not null,
+    sealed            tinyint(1)     default 0 not null,
+    update_time       datetime
+);
+
+create table task_fence
+(
+    name  varchar(64) primary key,
+    token bigint default 0 not null
+);